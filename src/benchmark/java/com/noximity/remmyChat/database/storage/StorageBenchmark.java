@@ -0,0 +1,116 @@
+package com.noximity.remmyChat.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Compares the storage backends on the work DatabaseManager gives them: batches of saves
+ * from the writer thread, single loads at login, and reopening the store on startup.
+ * <p>
+ * Arguments: {@code [users] [batch size] [loads]}, defaulting to 10000, 100 and 10000.
+ * Every backend gets a fresh directory under the system temp folder.
+ */
+public final class StorageBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger("StorageBenchmark");
+
+    private StorageBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int loads = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        LOGGER.setLevel(Level.WARNING);
+
+        List<UserData> records = new ArrayList<>(users);
+        Random random = new Random(42);
+        for (int i = 0; i < users; i++) {
+            records.add(new UserData(new UUID(random.nextLong(), random.nextLong()),
+                    random.nextBoolean(), random.nextBoolean(), i % 3 == 0 ? "staff" : "global", i));
+        }
+
+        System.out.printf("%d users, batches of %d, %d loads%n%n", users, batchSize, loads);
+        System.out.printf("%-12s %14s %14s %14s %12s%n", "backend", "inserts/s", "updates/s", "loads/s", "reopen ms");
+        run("sqlite", SqliteBackend::new, records, batchSize, loads);
+        run("h2", H2Backend::new, records, batchSize, loads);
+        run("binary-log", BinaryLogBackend::new, records, batchSize, loads);
+    }
+
+    private static void run(String name, BiFunction<File, Logger, StorageBackend> factory,
+                            List<UserData> records, int batchSize, int loads) throws IOException {
+        Path directory = Files.createTempDirectory("remmychat-bench-" + name);
+        try {
+            StorageBackend backend = factory.apply(directory.toFile(), LOGGER);
+            backend.open();
+
+            double inserts = saveRate(backend, records, batchSize);
+            List<UserData> updated = new ArrayList<>(records.size());
+            for (UserData data : records) {
+                updated.add(new UserData(data.uuid(), !data.msgToggle(), data.socialSpy(),
+                        data.currentChannel(), data.lastSeen() + 1));
+            }
+            double updates = saveRate(backend, updated, batchSize);
+            double loadRate = loadRate(backend, records, loads);
+            backend.close();
+
+            long start = System.nanoTime();
+            StorageBackend reopened = factory.apply(directory.toFile(), LOGGER);
+            reopened.open();
+            double reopenMillis = (System.nanoTime() - start) / 1_000_000.0;
+            UserData check = reopened.load(records.get(records.size() / 2).uuid());
+            reopened.close();
+            if (check == null || check.msgToggle() == records.get(records.size() / 2).msgToggle()) {
+                System.out.printf("%-12s returned stale data after reopening%n", name);
+                return;
+            }
+
+            System.out.printf("%-12s %14.0f %14.0f %14.0f %12.1f%n", name, inserts, updates, loadRate, reopenMillis);
+        } catch (StorageException | LinkageError e) {
+            // Usually a driver that is missing from the classpath
+            System.out.printf("%-12s skipped: %s%n", name, e.getMessage());
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static double saveRate(StorageBackend backend, List<UserData> records, int batchSize)
+            throws StorageException {
+        long start = System.nanoTime();
+        for (int i = 0; i < records.size(); i += batchSize) {
+            backend.saveAll(records.subList(i, Math.min(records.size(), i + batchSize)));
+        }
+        return records.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double loadRate(StorageBackend backend, List<UserData> records, int loads)
+            throws StorageException {
+        Random random = new Random(7);
+        long start = System.nanoTime();
+        for (int i = 0; i < loads; i++) {
+            if (backend.load(records.get(random.nextInt(records.size())).uuid()) == null) {
+                throw new StorageException("A saved user could not be loaded");
+            }
+        }
+        return loads / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
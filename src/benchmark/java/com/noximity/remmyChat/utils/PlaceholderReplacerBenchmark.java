@@ -0,0 +1,102 @@
+package com.noximity.remmyChat.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares PlaceholderReplacer's two search strategies with the chain of String.replace
+ * calls it replaced, on formats the size of a chat format with 1 to 20 tokens in them.
+ * PlaceholderReplacer.MAX_LINEAR_TOKENS, where the automaton takes over, comes from this table.
+ * <p>
+ * Arguments: {@code [iterations] [rounds]}, defaulting to 1000000 and 5. The first round
+ * is warm-up and not printed; each cell is the best of the remaining rounds.
+ */
+public final class PlaceholderReplacerBenchmark {
+
+    private static final int[] TOKEN_COUNTS = {1, 2, 3, 4, 5, 6, 8, 12, 20};
+
+    private static long sink;
+
+    private PlaceholderReplacerBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.printf("Java %s, %d iterations, best of %d rounds (ns/op)%n%n",
+                Runtime.version(), iterations, rounds - 1);
+        System.out.printf("%-7s %7s %16s %10s %10s%n", "tokens", "chars", "String.replace", "indexOf", "automaton");
+        for (int count : TOKEN_COUNTS) {
+            run(count, iterations, rounds);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void run(int count, int iterations, int rounds) {
+        String[] tokens = new String[count];
+        String[] values = new String[count];
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tokens[i] = "%custom_" + i + "%";
+            values[i] = "<#55FF55>value" + i;
+            parts.add(tokens[i]);
+        }
+        // Tokens spread through literal MiniMessage markup, like a configured format
+        StringBuilder format = new StringBuilder("<gray>[</gray>");
+        for (int i = 0; i < parts.size(); i++) {
+            format.append(parts.get(i)).append(i % 2 == 0 ? " <white>- " : "</white> ");
+        }
+        format.append("<hover:show_text:'Click to reply'>%name%</hover>: %message%");
+        String text = format.toString();
+
+        PlaceholderReplacer linear = PlaceholderReplacer.compile(Integer.MAX_VALUE, tokens);
+        PlaceholderReplacer automaton = PlaceholderReplacer.compile(0, tokens);
+        String expected = chained(text, tokens, values);
+        if (!expected.equals(linear.replace(text, values)) || !expected.equals(automaton.replace(text, values))) {
+            throw new IllegalStateException("The strategies disagree on " + text);
+        }
+
+        double bestChained = Double.MAX_VALUE;
+        double bestLinear = Double.MAX_VALUE;
+        double bestAutomaton = Double.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            double chained = timeChained(text, tokens, values, iterations);
+            double indexOf = time(linear, text, values, iterations);
+            double table = time(automaton, text, values, iterations);
+            if (round > 0) {
+                bestChained = Math.min(bestChained, chained);
+                bestLinear = Math.min(bestLinear, indexOf);
+                bestAutomaton = Math.min(bestAutomaton, table);
+            }
+        }
+        System.out.printf("%-7d %7d %16.0f %10.0f %10.0f%n",
+                count, text.length(), bestChained, bestLinear, bestAutomaton);
+    }
+
+    private static double timeChained(String text, String[] tokens, String[] values, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += chained(text, tokens, values).length();
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+
+    private static double time(PlaceholderReplacer replacer, String text, String[] values, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += replacer.replace(text, values).length();
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+
+    private static String chained(String text, String[] tokens, String[] values) {
+        String result = text;
+        for (int i = 0; i < tokens.length; i++) {
+            result = result.replace(tokens[i], values[i]);
+        }
+        return result;
+    }
+}
@@ -9,10 +9,18 @@ import com.noximity.remmyChat.config.ConfigManager;
 import com.noximity.remmyChat.config.Messages;
 import com.noximity.remmyChat.database.DatabaseManager;
 import com.noximity.remmyChat.listeners.ChatListener;
+import com.noximity.remmyChat.listeners.LuckPermsListener;
+import com.noximity.remmyChat.listeners.PlayerGridListener;
 import com.noximity.remmyChat.services.ChatService;
 import com.noximity.remmyChat.services.FormatService;
+import com.noximity.remmyChat.services.MessageHistory;
 import com.noximity.remmyChat.services.PermissionService;
+import com.noximity.remmyChat.services.RateLimiter;
+import com.noximity.remmyChat.utils.PlaceholderCache;
 import com.noximity.remmyChat.utils.PlaceholderManager;
+import com.noximity.remmyChat.utils.PlayerGrid;
+import com.noximity.remmyChat.utils.PlayerNameIndex;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 public final class RemmyChat extends JavaPlugin {
@@ -24,29 +32,39 @@ public final class RemmyChat extends JavaPlugin {
     private FormatService formatService;
     private DatabaseManager databaseManager;
     private PermissionService permissionService;
+    private RateLimiter rateLimiter;
+    private MessageHistory messageHistory;
     private PlaceholderManager placeholderManager;
+    private PlaceholderCache placeholderCache;
+    private LuckPermsListener luckPermsListener;
+    private PlayerGrid playerGrid;
+    private PlayerNameIndex playerNameIndex;
     private boolean protocolLibEnabled = false;
 
     @Override
     public void onEnable() {
         instance = this;
 
-        this.configManager = new ConfigManager(this);
+        // ConfigManager compiles the config with these three, they only read it once it is published
         this.messages = new Messages(this);
+        this.placeholderManager = new PlaceholderManager(this);
+        this.formatService = new FormatService(this);
+        this.configManager = new ConfigManager(this);
         this.databaseManager = new DatabaseManager(this);
 
         this.permissionService = new PermissionService(this);
-        this.formatService = new FormatService(this);
+        this.placeholderCache = new PlaceholderCache(this);
         this.chatService = new ChatService(this);
-        this.placeholderManager = new PlaceholderManager(this);
+        this.rateLimiter = new RateLimiter(this);
+        this.messageHistory = new MessageHistory(this);
 
         // ProtocolLib detection
         if (getServer().getPluginManager().getPlugin("ProtocolLib") != null) {
             protocolLibEnabled = true;
-            debugLog("ProtocolLib found. Advanced message deletion enabled.");
+            debugLog("ProtocolLib found.");
         } else {
             protocolLibEnabled = false;
-            debugLog("ProtocolLib not found. Advanced message deletion disabled.");
+            debugLog("ProtocolLib not found.");
         }
 
         getCommand("remchat").setExecutor(new ChatCommand(this));
@@ -55,8 +73,23 @@ public final class RemmyChat extends JavaPlugin {
         getCommand("msgtoggle").setExecutor(new MsgToggleCommand(this));
         getCommand("socialspy").setExecutor(new SocialSpyCommand(this));
 
+        this.playerNameIndex = new PlayerNameIndex();
+        for (Player player : getServer().getOnlinePlayers()) {
+            playerNameIndex.add(player);
+        }
         getServer().getPluginManager().registerEvents(new ChatListener(this), this);
 
+        this.playerGrid = new PlayerGrid();
+        for (Player player : getServer().getOnlinePlayers()) {
+            playerGrid.update(player, player.getLocation());
+        }
+        getServer().getPluginManager().registerEvents(new PlayerGridListener(playerGrid), this);
+
+        if (permissionService.isLuckPermsHooked()) {
+            luckPermsListener = new LuckPermsListener(this);
+            luckPermsListener.register();
+        }
+
         if (getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
             getLogger().info("PlaceholderAPI found and hooked!");
             new RemmyChatPlaceholders(this).register();
@@ -69,8 +102,16 @@ public final class RemmyChat extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        if (luckPermsListener != null) {
+            luckPermsListener.unregister();
+        }
+
+        if (placeholderCache != null) {
+            placeholderCache.shutdown();
+        }
+
         if (chatService != null) {
-            chatService.saveAllUsers();
+            chatService.saveDirtyUsers();
         }
 
         if (databaseManager != null) {
@@ -108,16 +149,36 @@ public final class RemmyChat extends JavaPlugin {
         return permissionService;
     }
 
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
+
     public PlaceholderManager getPlaceholderManager() {
         return placeholderManager;
     }
 
+    public PlaceholderCache getPlaceholderCache() {
+        return placeholderCache;
+    }
+
+    public PlayerGrid getPlayerGrid() {
+        return playerGrid;
+    }
+
+    public PlayerNameIndex getPlayerNameIndex() {
+        return playerNameIndex;
+    }
+
     public boolean isProtocolLibEnabled() {
         return protocolLibEnabled;
     }
 
     public void debugLog(String message) {
-        if (getConfig().getBoolean("debug.enabled", false)) {
+        if (configManager != null && configManager.isDebugEnabled()) {
             getLogger().info("[DEBUG] " + message);
         }
     }
@@ -1,8 +1,11 @@
 package com.noximity.remmyChat.commands;
 
 import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.config.ConfigSnapshot;
 import com.noximity.remmyChat.models.Channel;
-import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import com.noximity.remmyChat.services.MessageHistory;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -45,6 +48,7 @@ public class ChatCommand implements CommandExecutor, TabCompleter {
                 handleChannelCommand(player, args);
             }
             case "reload" -> handleReloadCommand(sender);
+            case "delete" -> handleDeleteCommand(sender, args);
             default -> {
                 if (sender instanceof Player player) {
                     sendHelpMessage(player);
@@ -62,7 +66,7 @@ public class ChatCommand implements CommandExecutor, TabCompleter {
         if (args.length < 2) {
             // Show current channel
             player.sendMessage(plugin.getFormatService().formatSystemMessage("current-channel",
-                    Placeholder.parsed("channel", plugin.getChatService().getChatUser(player.getUniqueId()).getCurrentChannel())));
+                    "channel", plugin.getChatService().getChatUser(player.getUniqueId()).getCurrentChannel()));
             return;
         }
 
@@ -71,7 +75,7 @@ public class ChatCommand implements CommandExecutor, TabCompleter {
 
         if (channel == null) {
             player.sendMessage(plugin.getFormatService().formatSystemMessage("error.channel-not-found",
-                    Placeholder.parsed("channel", channelName)));
+                    "channel", channelName));
             return;
         }
 
@@ -85,7 +89,7 @@ public class ChatCommand implements CommandExecutor, TabCompleter {
         // Set channel
         plugin.getChatService().setChannel(player.getUniqueId(), channelName);
         player.sendMessage(plugin.getFormatService().formatSystemMessage("channel-changed",
-                Placeholder.parsed("channel", channelName)));
+                "channel", channelName));
     }
 
     private void handleReloadCommand(CommandSender sender) {
@@ -94,9 +98,44 @@ public class ChatCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        plugin.getConfigManager().reloadConfig();
-        plugin.getMessages().reloadMessages();
-        sender.sendMessage(plugin.getFormatService().formatSystemMessage("plugin-reloaded"));
+        // Parse the files off the main thread, chat keeps using the old snapshot until the new one is ready
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            plugin.getConfigManager().reloadConfig();
+            Bukkit.getScheduler().runTask(plugin, () ->
+                    sender.sendMessage(plugin.getFormatService().formatSystemMessage("plugin-reloaded")));
+        });
+    }
+
+    private void handleDeleteCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission(MessageHistory.DELETE_PERMISSION)) {
+            sender.sendMessage(plugin.getFormatService().formatSystemMessage("error.no-permission"));
+            return;
+        }
+
+        // Sent by the delete button, so a bad id means the command was typed by hand
+        int id;
+        try {
+            id = args.length >= 2 ? Integer.parseInt(args[1]) : 0;
+        } catch (NumberFormatException e) {
+            id = 0;
+        }
+        if (id <= 0) {
+            sender.sendMessage(plugin.getFormatService().formatSystemMessage("error.delete-usage"));
+            return;
+        }
+        if (!plugin.getMessageHistory().delete(id)) {
+            // Pushed out of every history already, or deleted by someone else
+            sender.sendMessage(plugin.getFormatService().formatSystemMessage("error.message-not-found"));
+            return;
+        }
+
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        if (!config.getDeleteButtonClickMessage().isEmpty()) {
+            sender.sendMessage(MiniMessage.miniMessage().deserialize(config.getDeleteButtonClickMessage()));
+        }
+        if (sender instanceof Player player && !config.getDeleteButtonSound().isEmpty()) {
+            player.playSound(player.getLocation(), config.getDeleteButtonSound(), 1.0f, 1.0f);
+        }
     }
 
     private void sendHelpMessage(Player player) {
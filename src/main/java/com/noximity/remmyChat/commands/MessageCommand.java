@@ -2,9 +2,7 @@ package com.noximity.remmyChat.commands;
 
 import com.noximity.remmyChat.RemmyChat;
 import com.noximity.remmyChat.models.ChatUser;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
-import org.bukkit.Bukkit;
+import com.noximity.remmyChat.models.PrivateMessage;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -16,7 +14,6 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 public class MessageCommand implements CommandExecutor, TabCompleter {
 
@@ -38,22 +35,13 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        // First try to get an exact match to prevent partial matches
-        Player target = null;
-        String targetName = args[0];
-
-        // Check for exact match first
-        for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-            if (onlinePlayer.getName().equalsIgnoreCase(targetName)) {
-                target = onlinePlayer;
-                break;
-            }
-        }
+        // Only an exact match counts, so a partial name never messages the wrong player
+        Player target = plugin.getPlayerNameIndex().getExact(args[0]);
 
         // If no exact match was found, show error
         if (target == null || !target.isOnline()) {
             player.sendMessage(plugin.getFormatService().formatSystemMessage("error.player-not-found",
-                    Placeholder.parsed("player", args[0])));
+                    "player", args[0]));
             return true;
         }
 
@@ -68,7 +56,7 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
         ChatUser targetUser = plugin.getChatService().getChatUser(target.getUniqueId());
         if (!targetUser.isMsgToggle() && !player.hasPermission("remmychat.msgtoggle.bypass")) {
             player.sendMessage(plugin.getFormatService().formatSystemMessage("error.player-messages-disabled",
-                    Placeholder.parsed("player", target.getName())));
+                    "player", target.getName()));
             return true;
         }
 
@@ -77,23 +65,19 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
             messageBuilder.append(args[i]).append(" ");
         }
         String message = messageBuilder.toString().trim();
-        player.sendMessage(plugin.getFormatService().formatSystemMessage("msg-to-format",
-                Placeholder.parsed("player", target.getName()),
-                Placeholder.parsed("message", message)));
-
-        target.sendMessage(plugin.getFormatService().formatSystemMessage("msg-from-format",
-                Placeholder.parsed("player", player.getName()),
-                Placeholder.parsed("message", message)));
-
-        Component spyMessage = plugin.getFormatService().formatSystemMessage("socialspy-format",
-                Placeholder.parsed("sender", player.getName()),
-                Placeholder.parsed("receiver", target.getName()),
-                Placeholder.parsed("message", message));
-
-        for (ChatUser spyUser : plugin.getChatService().getSocialSpyUsers()) {
-            Player spy = plugin.getServer().getPlayer(spyUser.getUuid());
-            if (spy != null && spy.isOnline() && !spy.equals(player) && !spy.equals(target)) {
-                spy.sendMessage(spyMessage);
+        PrivateMessage privateMessage = plugin.getFormatService().formatPrivateMessage(player, target, message);
+        if (privateMessage.toSender() != null) {
+            player.sendMessage(privateMessage.toSender());
+        }
+        if (privateMessage.toReceiver() != null) {
+            target.sendMessage(privateMessage.toReceiver());
+        }
+
+        if (privateMessage.toSpies() != null) {
+            for (Player spy : plugin.getChatService().getSocialSpies()) {
+                if (!spy.equals(player) && !spy.equals(target)) {
+                    spy.sendMessage(privateMessage.toSpies());
+                }
             }
         }
 
@@ -108,10 +92,7 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
     @Override
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
         if (args.length == 1) {
-            return Bukkit.getOnlinePlayers().stream()
-                    .filter(player -> args[0].isEmpty() || player.getName().toLowerCase().startsWith(args[0].toLowerCase()))
-                    .map(Player::getName)
-                    .collect(Collectors.toList());
+            return plugin.getPlayerNameIndex().complete(args[0]);
         }
         return new ArrayList<>();
     }
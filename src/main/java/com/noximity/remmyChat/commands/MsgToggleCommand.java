@@ -29,7 +29,7 @@ public class MsgToggleCommand implements CommandExecutor {
         chatUser.setMsgToggle(newState);
 
         // Save the new state to the database
-        plugin.getDatabaseManager().saveUserPreferences(chatUser);
+        plugin.getChatService().saveChatUser(chatUser);
 
         if (newState) {
             Component message = plugin.getFormatService().formatSystemMessage("msgtoggle-enabled");
@@ -2,8 +2,7 @@ package com.noximity.remmyChat.commands;
 
 import com.noximity.remmyChat.RemmyChat;
 import com.noximity.remmyChat.models.ChatUser;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import com.noximity.remmyChat.models.PrivateMessage;
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -50,7 +49,7 @@ public class ReplyCommand implements CommandExecutor {
         ChatUser targetUser = plugin.getChatService().getChatUser(target.getUniqueId());
         if (!targetUser.isMsgToggle() && !player.hasPermission("remmychat.msgtoggle.bypass")) {
             player.sendMessage(plugin.getFormatService().formatSystemMessage("error.player-messages-disabled",
-                    Placeholder.parsed("player", target.getName())));
+                    "player", target.getName()));
             return true;
         }
 
@@ -59,23 +58,19 @@ public class ReplyCommand implements CommandExecutor {
             messageBuilder.append(arg).append(" ");
         }
         String message = messageBuilder.toString().trim();
-        player.sendMessage(plugin.getFormatService().formatSystemMessage("msg-to-format",
-                Placeholder.parsed("player", target.getName()),
-                Placeholder.parsed("message", message)));
-
-        target.sendMessage(plugin.getFormatService().formatSystemMessage("msg-from-format",
-                Placeholder.parsed("player", player.getName()),
-                Placeholder.parsed("message", message)));
-
-        Component spyMessage = plugin.getFormatService().formatSystemMessage("socialspy-format",
-                Placeholder.parsed("sender", player.getName()),
-                Placeholder.parsed("receiver", target.getName()),
-                Placeholder.parsed("message", message));
+        PrivateMessage privateMessage = plugin.getFormatService().formatPrivateMessage(player, target, message);
+        if (privateMessage.toSender() != null) {
+            player.sendMessage(privateMessage.toSender());
+        }
+        if (privateMessage.toReceiver() != null) {
+            target.sendMessage(privateMessage.toReceiver());
+        }
 
-        for (ChatUser spyUser : plugin.getChatService().getSocialSpyUsers()) {
-            Player spy = plugin.getServer().getPlayer(spyUser.getUuid());
-            if (spy != null && spy.isOnline() && !spy.equals(player) && !spy.equals(target)) {
-                spy.sendMessage(spyMessage);
+        if (privateMessage.toSpies() != null) {
+            for (Player spy : plugin.getChatService().getSocialSpies()) {
+                if (!spy.equals(player) && !spy.equals(target)) {
+                    spy.sendMessage(privateMessage.toSpies());
+                }
             }
         }
 
@@ -30,10 +30,10 @@ public class SocialSpyCommand implements CommandExecutor {
 
         ChatUser chatUser = plugin.getChatService().getChatUser(player.getUniqueId());
         boolean newState = !chatUser.isSocialSpy();
-        chatUser.setSocialSpy(newState);
+        plugin.getChatService().setSocialSpy(player.getUniqueId(), newState);
 
         // Save the new state to the database
-        plugin.getDatabaseManager().saveUserPreferences(chatUser);
+        plugin.getChatService().saveChatUser(chatUser);
 
         if (newState) {
             player.sendMessage(plugin.getFormatService().formatSystemMessage("socialspy-enabled"));
@@ -3,31 +3,25 @@ package com.noximity.remmyChat.config;
 import com.noximity.remmyChat.RemmyChat;
 import com.noximity.remmyChat.models.Channel;
 import com.noximity.remmyChat.models.GroupFormat;
-import org.bukkit.configuration.ConfigurationSection;
+import com.noximity.remmyChat.services.FormatService;
+import com.noximity.remmyChat.services.RateLimiter;
+import com.noximity.remmyChat.utils.PlaceholderCache;
+import com.noximity.remmyChat.utils.PlaceholderReplacer;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.Set;
 
 public class ConfigManager {
 
     private final RemmyChat plugin;
-    private FileConfiguration config;
-    private final Map<String, Channel> channels = new HashMap<>();
-    private final Map<String, GroupFormat> groupFormats = new HashMap<>();
-    private final Map<String, String> hoverTemplates = new HashMap<>();
-    private final Map<String, String> channelPrefixTemplates = new HashMap<>();
-    private final Map<String, String> groupPrefixTemplates = new HashMap<>();
-    private final Map<String, String> nameStyleTemplates = new HashMap<>();
-    private boolean urlFormattingEnabled;
-    private boolean useGroupFormat;
-    private boolean allowSelfMessaging;
-    private String chatFormat;
-    private boolean debugEnabled;
-    private boolean verboseStartup;
-    private final Map<String, String> symbolMappings = new HashMap<>();
+    private volatile LoadedConfig loaded;
 
     public ConfigManager(RemmyChat plugin) {
         this.plugin = plugin;
@@ -36,269 +30,190 @@ public class ConfigManager {
 
     private void loadConfig() {
         plugin.saveDefaultConfig();
-        this.config = plugin.getConfig();
-
-        // Load debug settings first
-        this.debugEnabled = config.getBoolean("debug.enabled", false);
-        this.verboseStartup = !config.isSet("debug.verbose-startup") || config.getBoolean("debug.verbose-startup", true);
-
-        loadTemplates();
-        loadChannels();
-        loadGroupFormats();
-        loadUrlFormatting();
-        loadSymbols();
-        this.useGroupFormat = config.getBoolean("features.use-group-format", true);
-        this.allowSelfMessaging = config.getBoolean("features.allow-self-messaging", false);
-        this.chatFormat = config.getString("chat-format", "%channel_prefix% %group_prefix%%name%: %message%");
-    }
-
-    private void loadTemplates() {
-        // Load hover templates
-        ConfigurationSection hoversSection = config.getConfigurationSection("templates.hovers");
-        if (hoversSection != null) {
-            for (String key : hoversSection.getKeys(false)) {
-                String template = hoversSection.getString(key);
-                if (template != null) {
-                    hoverTemplates.put(key, template);
-                    if (verboseStartup) {
-                        plugin.debugLog("Loaded hover template: " + key);
-                    }
-                }
-            }
-        }
-
-        // Load channel prefix templates
-        ConfigurationSection channelPrefixesSection = config.getConfigurationSection("templates.channel-prefixes");
-        if (channelPrefixesSection != null) {
-            for (String key : channelPrefixesSection.getKeys(false)) {
-                String template = channelPrefixesSection.getString(key);
-                if (template != null) {
-                    channelPrefixTemplates.put(key, template);
-                    if (verboseStartup) {
-                        plugin.debugLog("Loaded channel prefix template: " + key);
-                    }
-                }
-            }
-        }
-
-        // Load group prefix templates
-        ConfigurationSection groupPrefixesSection = config.getConfigurationSection("templates.group-prefixes");
-        if (groupPrefixesSection != null) {
-            for (String key : groupPrefixesSection.getKeys(false)) {
-                String template = groupPrefixesSection.getString(key);
-                if (template != null) {
-                    groupPrefixTemplates.put(key, template);
-                    if (verboseStartup) {
-                        plugin.debugLog("Loaded group prefix template: " + key);
-                    }
-                }
-            }
-        }
-
-        // Load name style templates
-        ConfigurationSection nameStylesSection = config.getConfigurationSection("templates.name-styles");
-        if (nameStylesSection != null) {
-            for (String key : nameStylesSection.getKeys(false)) {
-                String template = nameStylesSection.getString(key);
-                if (template != null) {
-                    nameStyleTemplates.put(key, template);
-                    if (verboseStartup) {
-                        plugin.debugLog("Loaded name style template: " + key);
-                    }
-                }
-            }
-        }
+        this.loaded = build(new ConfigSnapshot(plugin, plugin.getConfig(), loadSymbols()));
     }
 
-    private void loadChannels() {
-        ConfigurationSection channelsSection = config.getConfigurationSection("channels");
-        if (channelsSection == null) {
-            plugin.getLogger().warning("No channels configured!");
-            return;
-        }
-
-        for (String key : channelsSection.getKeys(false)) {
-            String permission = channelsSection.getString(key + ".permission", "");
-            double radius = channelsSection.getDouble(key + ".radius", -1);
-            String prefix = channelsSection.getString(key + ".prefix", "");
-            String hover = channelsSection.getString(key + ".hover", "player-info");
-            String displayName = channelsSection.getString(key + ".display-name", "");
-
-            Channel channel = new Channel(key, permission, radius, prefix, hover, displayName);
-            channels.put(key, channel);
-
-            if (verboseStartup) {
-                plugin.getLogger().info("Loaded channel: " + key + (displayName.isEmpty() ? "" : " with display name: " + displayName));
-            }
+    private FileConfiguration loadSymbols() {
+        File symbolsFile = new File(plugin.getDataFolder(), "symbols.yml");
+        if (!symbolsFile.exists()) {
+            plugin.saveResource("symbols.yml", false);
         }
+        return YamlConfiguration.loadConfiguration(symbolsFile);
     }
 
-    private void loadGroupFormats() {
-        ConfigurationSection groupsSection = config.getConfigurationSection("groups");
-        if (groupsSection == null) {
-            plugin.getLogger().info("No group formats configured, using default name styles only.");
-            return;
-        }
+    /**
+     * Reads config.yml into a configuration of its own, with the bundled file as defaults.
+     * JavaPlugin's config is left alone, so this may run off the main thread.
+     */
+    private FileConfiguration loadConfigFile() {
+        FileConfiguration config = YamlConfiguration.loadConfiguration(new File(plugin.getDataFolder(), "config.yml"));
 
-        for (String key : groupsSection.getKeys(false)) {
-            String nameStyle = groupsSection.getString(key + ".name-style", "default");
-            String prefix = groupsSection.getString(key + ".prefix", "");
-            String format = groupsSection.getString(key + ".format", "");
-
-            // Debug information
-            if (debugEnabled || verboseStartup) {
-                plugin.debugLog("Loading group format for " + key + ":");
-                plugin.debugLog("  - name-style: " + nameStyle);
-                plugin.debugLog("  - prefix: '" + prefix + "'");
-                plugin.debugLog("  - format: '" + format + "'");
-            }
-
-            GroupFormat groupFormat = new GroupFormat(key, nameStyle, prefix, format);
-            groupFormats.put(key, groupFormat);
-
-            if (verboseStartup) {
-                plugin.debugLog("Loaded group format: " + key);
+        try (InputStream defaultStream = plugin.getResource("config.yml")) {
+            if (defaultStream != null) {
+                config.setDefaults(YamlConfiguration.loadConfiguration(
+                        new InputStreamReader(defaultStream, StandardCharsets.UTF_8)));
             }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not load default config.yml: " + e.getMessage());
+        }
+        return config;
+    }
+
+    /**
+     * Compiles the placeholders, formats, messages and rate limits of a snapshot. Nothing is
+     * published here, so the current config stays in use until the result is complete.
+     */
+    private LoadedConfig build(ConfigSnapshot snapshot) {
+        FileConfiguration messages = plugin.getMessages().load();
+        PlaceholderReplacer customPlaceholders = plugin.getPlaceholderManager().compile(snapshot);
+        FormatService.Formats formats = plugin.getFormatService().compile(snapshot, customPlaceholders, messages);
+        Set<String> refreshed = PlaceholderCache.findPlaceholders(formats.getParsedSources());
+        if (snapshot.isDebugEnabled()) {
+            plugin.getLogger().info("[DEBUG] Placeholders kept warm by the refresher: " + refreshed);
         }
+        return new LoadedConfig(snapshot, messages, customPlaceholders, formats,
+                RateLimiter.compileLimits(snapshot), refreshed);
     }
 
-    private void loadUrlFormatting() {
-        this.urlFormattingEnabled = config.getBoolean("url-formatting.enabled", true);
+    /**
+     * Reloads config.yml, symbols.yml and messages.yml. The files are parsed and everything
+     * derived from them is compiled on the calling thread, then published with a single write,
+     * so this may run off the main thread while chat is handled: a message is formatted
+     * entirely against the old load or entirely against the new one.
+     */
+    public void reloadConfig() {
+        this.loaded = build(new ConfigSnapshot(plugin, loadConfigFile(), loadSymbols()));
+
+        // Drop what was cached per player against the old load
+        plugin.getPlaceholderCache().reload();
+        plugin.getRateLimiter().reload();
+        plugin.getPermissionService().clearCache();
+        plugin.getFormatService().invalidateSenders();
     }
 
-    private void loadSymbols() {
-        symbolMappings.clear();
-        File symbolsFile = new File(plugin.getDataFolder(), "symbols.yml");
-        if (!symbolsFile.exists()) {
-            plugin.saveResource("symbols.yml", false);
-        }
-        FileConfiguration symbolsConfig = YamlConfiguration.loadConfiguration(symbolsFile);
-        if (symbolsConfig.isConfigurationSection("symbols")) {
-            ConfigurationSection section = symbolsConfig.getConfigurationSection("symbols");
-            for (String key : section.getKeys(false)) {
-                String value = section.getString(key);
-                if (value != null) {
-                    symbolMappings.put(key, value);
-                }
-            }
-        }
+    /**
+     * Gets the current load of the configuration and everything compiled from it. Read it once
+     * and keep the reference when several values must come from the same load.
+     * @return The current load
+     */
+    public LoadedConfig getLoaded() {
+        return loaded;
     }
 
-    public void reloadConfig() {
-        plugin.reloadConfig();
-        this.config = plugin.getConfig();
-
-        // Reload debug settings first
-        this.debugEnabled = config.getBoolean("debug.enabled", false);
-        this.verboseStartup = !config.isSet("debug.verbose-startup") || config.getBoolean("debug.verbose-startup", true);
-
-        channels.clear();
-        groupFormats.clear();
-        hoverTemplates.clear();
-        channelPrefixTemplates.clear();
-        groupPrefixTemplates.clear();
-        nameStyleTemplates.clear();
-        symbolMappings.clear();
-
-        loadTemplates();
-        loadChannels();
-        loadGroupFormats();
-        loadUrlFormatting();
-        loadSymbols();
-        this.useGroupFormat = config.getBoolean("features.use-group-format", true);
-        this.allowSelfMessaging = config.getBoolean("features.allow-self-messaging", false);
-        this.chatFormat = config.getString("chat-format", "%channel_prefix% %group_prefix%%name%: %message%");
-
-        // Reload placeholders
-        plugin.getPlaceholderManager().loadCustomPlaceholders();
+    /**
+     * Gets the current configuration. Read it once and keep the reference when several
+     * values must come from the same load.
+     * @return The current snapshot
+     */
+    public ConfigSnapshot getSnapshot() {
+        return loaded.snapshot();
     }
 
     public boolean isPlayerFormattingAllowed() {
-        return config.getBoolean("features.player-formatting", false);
+        return getSnapshot().isPlayerFormattingAllowed();
     }
 
     public Map<String, Channel> getChannels() {
-        return channels;
+        return getSnapshot().getChannels();
     }
 
     public Channel getChannel(String name) {
-        return channels.get(name);
+        return getSnapshot().getChannel(name);
     }
 
     public GroupFormat getGroupFormat(String name) {
-        return groupFormats.get(name);
+        return getSnapshot().getGroupFormat(name);
     }
 
     public Map<String, GroupFormat> getGroupFormats() {
-        return groupFormats;
+        return getSnapshot().getGroupFormats();
     }
 
     public String getHoverTemplate(String name) {
-        return hoverTemplates.getOrDefault(name, "");
+        return getSnapshot().getHoverTemplate(name);
     }
 
     public String getChannelPrefixTemplate(String name) {
-        return channelPrefixTemplates.getOrDefault(name, "");
+        return getSnapshot().getChannelPrefixTemplate(name);
     }
 
     public String getGroupPrefixTemplate(String name) {
-        return groupPrefixTemplates.getOrDefault(name, "");
+        return getSnapshot().getGroupPrefixTemplate(name);
     }
 
     public String getNameStyleTemplate(String name) {
-        return nameStyleTemplates.getOrDefault(name, nameStyleTemplates.getOrDefault("default", "<#4A90E2>%player_name%"));
+        return getSnapshot().getNameStyleTemplate(name);
     }
 
     public String getChatFormat() {
-        return chatFormat;
+        return getSnapshot().getChatFormat();
     }
 
     public boolean isUseGroupFormat() {
-        return useGroupFormat;
+        return getSnapshot().isUseGroupFormat();
     }
 
     public Channel getDefaultChannel() {
-        String defaultChannel = config.getString("default-channel");
-        return channels.getOrDefault(defaultChannel, null);
+        return getSnapshot().getDefaultChannel();
     }
 
     public boolean isFormatHoverEnabled() {
-        return config.getBoolean("features.format-hover", true);
+        return getSnapshot().isFormatHoverEnabled();
     }
 
     public boolean isLinkClickEnabled() {
-        return urlFormattingEnabled;
+        return getSnapshot().isUrlFormattingEnabled();
+    }
+
+    public String getUrlColor() {
+        return getSnapshot().getUrlColor();
+    }
+
+    public boolean isUrlUnderline() {
+        return getSnapshot().isUrlUnderline();
+    }
+
+    public boolean isUrlHover() {
+        return getSnapshot().isUrlHover();
+    }
+
+    public String getUrlHoverText() {
+        return getSnapshot().getUrlHoverText();
     }
 
     public int getCooldown() {
-        return config.getInt("chat-cooldown", 0);
+        return getSnapshot().getCooldown();
     }
 
     public boolean isDebugEnabled() {
-        return debugEnabled;
+        return getSnapshot().isDebugEnabled();
     }
 
     public boolean isAllowSelfMessaging() {
-        return allowSelfMessaging;
+        return getSnapshot().isAllowSelfMessaging();
+    }
+
+    public boolean isChatRendererEnabled() {
+        return getSnapshot().isChatRendererEnabled();
     }
 
     public Map<String, String> getSymbolMappings() {
-        return symbolMappings;
+        return getSnapshot().getSymbolMappings();
     }
 
     public String getDeleteButtonText() {
-        return config.getString("delete-button.text", "<red>❌</red>");
+        return getSnapshot().getDeleteButtonText();
     }
 
     public String getDeleteButtonHover() {
-        return config.getString("delete-button.hover", "<gray>Delete this message</gray>");
+        return getSnapshot().getDeleteButtonHover();
     }
 
     public String getDeleteButtonClickMessage() {
-        return config.getString("delete-button.click-message", "<green>Message deleted!</green>");
+        return getSnapshot().getDeleteButtonClickMessage();
     }
 
     public String getDeleteButtonSound() {
-        return config.getString("delete-button.sound", "");
+        return getSnapshot().getDeleteButtonSound();
     }
 }
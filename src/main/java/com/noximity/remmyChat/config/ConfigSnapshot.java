@@ -0,0 +1,484 @@
+package com.noximity.remmyChat.config;
+
+import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.models.Channel;
+import com.noximity.remmyChat.models.GroupFormat;
+import com.noximity.remmyChat.models.RateLimit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable view of config.yml and symbols.yml. A snapshot is fully built before it is
+ * published, so async chat threads never observe a half-loaded configuration.
+ */
+public final class ConfigSnapshot {
+
+    private final boolean debugEnabled;
+    private final boolean debugFormatProcessing;
+    private final boolean debugPlaceholderResolution;
+    private final boolean debugGroupSelection;
+    private final boolean verboseStartup;
+    private final Map<String, Channel> channels;
+    private final Channel defaultChannel;
+    private final Map<String, GroupFormat> groupFormats;
+    private final GroupFormat[] groupsByPriority;
+    private final Map<String, String> hoverTemplates;
+    private final Map<String, String> channelPrefixTemplates;
+    private final Map<String, String> groupPrefixTemplates;
+    private final Map<String, String> nameStyleTemplates;
+    private final Map<String, String> customPlaceholders;
+    private final Map<String, String> symbolMappings;
+    private final boolean placeholderCacheEnabled;
+    private final long placeholderCacheDefaultTtl;
+    private final Map<String, Long> placeholderCacheTtls;
+    private final boolean placeholderRefreshEnabled;
+    private final long placeholderRefreshInterval;
+    private final boolean urlFormattingEnabled;
+    private final String urlColor;
+    private final boolean urlUnderline;
+    private final boolean urlHover;
+    private final String urlHoverText;
+    private final boolean useGroupFormat;
+    private final boolean allowSelfMessaging;
+    private final boolean chatRendererEnabled;
+    private final boolean playerFormattingAllowed;
+    private final boolean formatHoverEnabled;
+    private final String chatFormat;
+    private final int cooldown;
+    private final long databaseFlushInterval;
+    private final String databaseType;
+    private final boolean rateLimitEnabled;
+    private final RateLimit defaultRateLimit;
+    private final Map<String, RateLimit> channelRateLimits;
+    private final List<RateLimit> rateLimitTiers;
+    private final String deleteButtonText;
+    private final String deleteButtonHover;
+    private final String deleteButtonClickMessage;
+    private final String deleteButtonSound;
+    private final int messageHistorySize;
+
+    ConfigSnapshot(RemmyChat plugin, FileConfiguration config, FileConfiguration symbolsConfig) {
+        // Load debug settings first
+        this.debugEnabled = config.getBoolean("debug.enabled", false);
+        this.debugFormatProcessing = debugEnabled && config.getBoolean("debug.format-processing", false);
+        this.debugPlaceholderResolution = debugEnabled && config.getBoolean("debug.placeholder-resolution", false);
+        this.debugGroupSelection = debugEnabled && config.getBoolean("debug.group-selection", false);
+        this.verboseStartup = !config.isSet("debug.verbose-startup") || config.getBoolean("debug.verbose-startup", true);
+
+        this.hoverTemplates = loadTemplates(plugin, config, "templates.hovers", "hover template");
+        this.channelPrefixTemplates = loadTemplates(plugin, config, "templates.channel-prefixes", "channel prefix template");
+        this.groupPrefixTemplates = loadTemplates(plugin, config, "templates.group-prefixes", "group prefix template");
+        this.nameStyleTemplates = loadTemplates(plugin, config, "templates.name-styles", "name style template");
+        this.channels = loadChannels(plugin, config);
+        this.defaultChannel = channels.get(config.getString("default-channel"));
+        this.groupFormats = loadGroupFormats(plugin, config);
+        this.groupsByPriority = groupFormats.values().toArray(new GroupFormat[0]);
+        // Stable, so groups of equal priority keep their order from the config
+        Arrays.sort(groupsByPriority, Comparator.comparingInt(GroupFormat::getPriority).reversed());
+        this.customPlaceholders = loadStrings(config.getConfigurationSection("placeholders"));
+        this.symbolMappings = loadStrings(symbolsConfig.getConfigurationSection("symbols"));
+
+        this.placeholderCacheEnabled = config.getBoolean("placeholder-cache.enabled", true);
+        this.placeholderCacheDefaultTtl = toMillis(config.getDouble("placeholder-cache.default-ttl", 5));
+        this.placeholderCacheTtls = loadTtls(config.getConfigurationSection("placeholder-cache.ttl"));
+        this.placeholderRefreshEnabled = config.getBoolean("placeholder-cache.refresh.enabled", false);
+        this.placeholderRefreshInterval = Math.max(1L, config.getLong("placeholder-cache.refresh.interval", 100L));
+
+        this.urlFormattingEnabled = config.getBoolean("url-formatting.enabled", true);
+        this.urlColor = config.getString("url-formatting.color", "#3498DB");
+        this.urlUnderline = config.getBoolean("url-formatting.underline", true);
+        this.urlHover = config.getBoolean("url-formatting.hover", true);
+        this.urlHoverText = config.getString("url-formatting.hover-text", "<#AAAAAA>Click to open");
+
+        this.useGroupFormat = config.getBoolean("features.use-group-format", true);
+        this.allowSelfMessaging = config.getBoolean("features.allow-self-messaging", false);
+        this.chatRendererEnabled = config.getBoolean("features.chat-renderer", false);
+        this.playerFormattingAllowed = config.getBoolean("features.player-formatting", false);
+        this.formatHoverEnabled = config.getBoolean("features.format-hover", true);
+        this.chatFormat = config.getString("chat-format", "%channel_prefix% %group_prefix%%name%: %message%");
+        this.cooldown = config.getInt("chat-cooldown", 0);
+        this.databaseFlushInterval = Math.max(0L, config.getLong("database.flush-interval", 60L));
+        this.databaseType = config.getString("database.type", "sqlite").toLowerCase(Locale.ROOT);
+
+        if (config.isSet("rate-limit")) {
+            this.rateLimitEnabled = config.getBoolean("rate-limit.enabled", true);
+            this.defaultRateLimit = loadRateLimit(config.getConfigurationSection("rate-limit"), "default", 1, cooldown);
+            this.channelRateLimits = loadChannelRateLimits(config.getConfigurationSection("rate-limit.channels"));
+            this.rateLimitTiers = loadRateLimitTiers(config.getConfigurationSection("rate-limit.tiers"));
+        } else {
+            // Older configs only have chat-cooldown, which is a bucket of one message
+            this.rateLimitEnabled = cooldown > 0;
+            this.defaultRateLimit = new RateLimit("default", "", 1, cooldown * 1000L);
+            this.channelRateLimits = Collections.emptyMap();
+            this.rateLimitTiers = Collections.emptyList();
+        }
+
+        this.deleteButtonText = config.getString("delete-button.text", "<red>❌</red>");
+        this.deleteButtonHover = config.getString("delete-button.hover", "<gray>Delete this message</gray>");
+        this.deleteButtonClickMessage = config.getString("delete-button.click-message", "<green>Message deleted!</green>");
+        this.deleteButtonSound = config.getString("delete-button.sound", "");
+        this.messageHistorySize = Math.max(0, config.getInt("message-history.size", 100));
+    }
+
+    private Map<String, String> loadTemplates(RemmyChat plugin, FileConfiguration config, String path, String description) {
+        Map<String, String> templates = new LinkedHashMap<>();
+        ConfigurationSection section = config.getConfigurationSection(path);
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                String template = section.getString(key);
+                if (template != null) {
+                    templates.put(key, template);
+                    if (verboseStartup) {
+                        debugLog(plugin, "Loaded " + description + ": " + key);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(templates);
+    }
+
+    private Map<String, Channel> loadChannels(RemmyChat plugin, FileConfiguration config) {
+        Map<String, Channel> loaded = new LinkedHashMap<>();
+        ConfigurationSection channelsSection = config.getConfigurationSection("channels");
+        if (channelsSection == null) {
+            plugin.getLogger().warning("No channels configured!");
+            return Collections.unmodifiableMap(loaded);
+        }
+
+        for (String key : channelsSection.getKeys(false)) {
+            String permission = channelsSection.getString(key + ".permission", "");
+            double radius = channelsSection.getDouble(key + ".radius", -1);
+            String prefix = channelsSection.getString(key + ".prefix", "");
+            String hover = channelsSection.getString(key + ".hover", "player-info");
+            String displayName = channelsSection.getString(key + ".display-name", "");
+
+            Channel channel = new Channel(key, permission, radius, prefix, hover, displayName);
+            loaded.put(key, channel);
+
+            if (verboseStartup) {
+                plugin.getLogger().info("Loaded channel: " + key + (displayName.isEmpty() ? "" : " with display name: " + displayName));
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    private Map<String, GroupFormat> loadGroupFormats(RemmyChat plugin, FileConfiguration config) {
+        Map<String, GroupFormat> loaded = new LinkedHashMap<>();
+        ConfigurationSection groupsSection = config.getConfigurationSection("groups");
+        if (groupsSection == null) {
+            plugin.getLogger().info("No group formats configured, using default name styles only.");
+            return Collections.unmodifiableMap(loaded);
+        }
+
+        for (String key : groupsSection.getKeys(false)) {
+            String nameStyle = groupsSection.getString(key + ".name-style", "default");
+            String prefix = groupsSection.getString(key + ".prefix", "");
+            String format = groupsSection.getString(key + ".format", "");
+            int priority = groupsSection.getInt(key + ".priority", 0);
+
+            // Debug information
+            if (debugEnabled || verboseStartup) {
+                debugLog(plugin, "Loading group format for " + key + ":");
+                debugLog(plugin, "  - name-style: " + nameStyle);
+                debugLog(plugin, "  - prefix: '" + prefix + "'");
+                debugLog(plugin, "  - format: '" + format + "'");
+                debugLog(plugin, "  - priority: " + priority);
+            }
+
+            loaded.put(key, new GroupFormat(key, nameStyle, prefix, format, priority));
+
+            if (verboseStartup) {
+                debugLog(plugin, "Loaded group format: " + key);
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    private static Map<String, String> loadStrings(ConfigurationSection section) {
+        Map<String, String> loaded = new LinkedHashMap<>();
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                String value = section.getString(key);
+                if (value != null) {
+                    loaded.put(key, value);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    private static RateLimit loadRateLimit(ConfigurationSection section, String name, int defaultBurst, double defaultRefill) {
+        if (section == null) {
+            return new RateLimit(name, "", defaultBurst, toMillis(defaultRefill));
+        }
+        return new RateLimit(name, section.getString("permission", ""),
+                Math.max(1, section.getInt("burst", defaultBurst)),
+                toMillis(section.getDouble("refill", defaultRefill)));
+    }
+
+    private Map<String, RateLimit> loadChannelRateLimits(ConfigurationSection section) {
+        Map<String, RateLimit> loaded = new LinkedHashMap<>();
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                loaded.put(key, loadRateLimit(section.getConfigurationSection(key), key,
+                        defaultRateLimit.getBurst(), defaultRateLimit.getRefillMillis() / 1000.0));
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    private List<RateLimit> loadRateLimitTiers(ConfigurationSection section) {
+        List<RateLimit> loaded = new ArrayList<>();
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                RateLimit tier = loadRateLimit(section.getConfigurationSection(key), key,
+                        defaultRateLimit.getBurst(), defaultRateLimit.getRefillMillis() / 1000.0);
+                if (!tier.getPermission().isEmpty()) {
+                    loaded.add(tier);
+                }
+            }
+        }
+        return Collections.unmodifiableList(loaded);
+    }
+
+    private static Map<String, Long> loadTtls(ConfigurationSection section) {
+        Map<String, Long> loaded = new LinkedHashMap<>();
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                loaded.put(key.toLowerCase(Locale.ROOT), toMillis(section.getDouble(key)));
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    private static long toMillis(double seconds) {
+        return Math.max(0L, (long) (seconds * 1000));
+    }
+
+    private void debugLog(RemmyChat plugin, String message) {
+        // The snapshot is not published yet, so plugin.debugLog would read the previous one
+        if (debugEnabled) {
+            plugin.getLogger().info("[DEBUG] " + message);
+        }
+    }
+
+    public boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+
+    public boolean isDebugFormatProcessing() {
+        return debugFormatProcessing;
+    }
+
+    public boolean isDebugPlaceholderResolution() {
+        return debugPlaceholderResolution;
+    }
+
+    public boolean isDebugGroupSelection() {
+        return debugGroupSelection;
+    }
+
+    public boolean isVerboseStartup() {
+        return verboseStartup;
+    }
+
+    public Map<String, Channel> getChannels() {
+        return channels;
+    }
+
+    public Channel getChannel(String name) {
+        return channels.get(name);
+    }
+
+    public Channel getDefaultChannel() {
+        return defaultChannel;
+    }
+
+    public Map<String, GroupFormat> getGroupFormats() {
+        return groupFormats;
+    }
+
+    /**
+     * @return The group formats ordered from the highest priority to the lowest. Do not modify.
+     */
+    public GroupFormat[] getGroupsByPriority() {
+        return groupsByPriority;
+    }
+
+    public GroupFormat getGroupFormat(String name) {
+        return groupFormats.get(name);
+    }
+
+    public String getHoverTemplate(String name) {
+        return hoverTemplates.getOrDefault(name, "");
+    }
+
+    public String getChannelPrefixTemplate(String name) {
+        return channelPrefixTemplates.getOrDefault(name, "");
+    }
+
+    public String getGroupPrefixTemplate(String name) {
+        return groupPrefixTemplates.getOrDefault(name, "");
+    }
+
+    public String getNameStyleTemplate(String name) {
+        return nameStyleTemplates.getOrDefault(name, nameStyleTemplates.getOrDefault("default", "<#4A90E2>%player_name%"));
+    }
+
+    public Map<String, String> getCustomPlaceholders() {
+        return customPlaceholders;
+    }
+
+    public Map<String, String> getSymbolMappings() {
+        return symbolMappings;
+    }
+
+    public boolean isPlaceholderCacheEnabled() {
+        return placeholderCacheEnabled;
+    }
+
+    /**
+     * Gets how long a PlaceholderAPI value is reused. A per-placeholder entry (e.g. vault_eco_balance)
+     * wins over a per-expansion entry (e.g. vault), which wins over the default.
+     * @param identifier The placeholder without percent signs
+     * @return The time to live in milliseconds, 0 to resolve on every use
+     */
+    public long getPlaceholderTtl(String identifier) {
+        if (!placeholderCacheTtls.isEmpty()) {
+            String key = identifier.toLowerCase(Locale.ROOT);
+            Long ttl = placeholderCacheTtls.get(key);
+            if (ttl != null) {
+                return ttl;
+            }
+            int separator = key.indexOf('_');
+            if (separator > 0) {
+                ttl = placeholderCacheTtls.get(key.substring(0, separator));
+                if (ttl != null) {
+                    return ttl;
+                }
+            }
+        }
+        return placeholderCacheDefaultTtl;
+    }
+
+    public boolean isPlaceholderRefreshEnabled() {
+        return placeholderRefreshEnabled;
+    }
+
+    public long getPlaceholderRefreshInterval() {
+        return placeholderRefreshInterval;
+    }
+
+    public boolean isUrlFormattingEnabled() {
+        return urlFormattingEnabled;
+    }
+
+    public String getUrlColor() {
+        return urlColor;
+    }
+
+    public boolean isUrlUnderline() {
+        return urlUnderline;
+    }
+
+    public boolean isUrlHover() {
+        return urlHover;
+    }
+
+    public String getUrlHoverText() {
+        return urlHoverText;
+    }
+
+    public boolean isUseGroupFormat() {
+        return useGroupFormat;
+    }
+
+    public boolean isAllowSelfMessaging() {
+        return allowSelfMessaging;
+    }
+
+    public boolean isChatRendererEnabled() {
+        return chatRendererEnabled;
+    }
+
+    public boolean isPlayerFormattingAllowed() {
+        return playerFormattingAllowed;
+    }
+
+    public boolean isFormatHoverEnabled() {
+        return formatHoverEnabled;
+    }
+
+    public String getChatFormat() {
+        return chatFormat;
+    }
+
+    public int getCooldown() {
+        return cooldown;
+    }
+
+    /**
+     * @return Seconds between saves of changed user preferences, 0 to only save on quit and shutdown
+     */
+    public long getDatabaseFlushInterval() {
+        return databaseFlushInterval;
+    }
+
+    /**
+     * @return The configured storage backend: sqlite, h2 or binary-log
+     */
+    public String getDatabaseType() {
+        return databaseType;
+    }
+
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    public RateLimit getDefaultRateLimit() {
+        return defaultRateLimit;
+    }
+
+    public Map<String, RateLimit> getChannelRateLimits() {
+        return channelRateLimits;
+    }
+
+    /**
+     * @return Permission tiers in config order; the first one a player has replaces the default limit
+     */
+    public List<RateLimit> getRateLimitTiers() {
+        return rateLimitTiers;
+    }
+
+    public String getDeleteButtonText() {
+        return deleteButtonText;
+    }
+
+    public String getDeleteButtonHover() {
+        return deleteButtonHover;
+    }
+
+    public String getDeleteButtonClickMessage() {
+        return deleteButtonClickMessage;
+    }
+
+    public String getDeleteButtonSound() {
+        return deleteButtonSound;
+    }
+
+    /**
+     * @return How many chat messages are kept per player, 0 when message deletion is disabled
+     */
+    public int getMessageHistorySize() {
+        return messageHistorySize;
+    }
+}
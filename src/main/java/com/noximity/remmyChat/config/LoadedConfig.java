@@ -0,0 +1,24 @@
+package com.noximity.remmyChat.config;
+
+import com.noximity.remmyChat.services.FormatService;
+import com.noximity.remmyChat.services.RateLimiter;
+import com.noximity.remmyChat.utils.PlaceholderReplacer;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Set;
+
+/**
+ * One load of the configuration files together with everything compiled from them. ConfigManager
+ * builds it completely before publishing it, so a reader that takes it once sees config, messages,
+ * placeholders, formats and limits that all belong to the same load.
+ * @param snapshot The parsed config.yml and symbols.yml
+ * @param messages The parsed messages.yml, with the bundled file as defaults
+ * @param customPlaceholders The custom placeholders, nested ones already resolved
+ * @param formats The compiled chat formats, symbols and system messages
+ * @param rateLimits The compiled rate limits
+ * @param refreshedPlaceholders The PlaceholderAPI placeholders used by the formats, kept warm by the refresher
+ */
+public record LoadedConfig(ConfigSnapshot snapshot, FileConfiguration messages, PlaceholderReplacer customPlaceholders,
+                           FormatService.Formats formats, RateLimiter.Limits rateLimits,
+                           Set<String> refreshedPlaceholders) {
+}
@@ -13,45 +13,52 @@ import java.nio.charset.StandardCharsets;
 public class Messages {
 
     private final RemmyChat plugin;
-    private File messagesFile;
-    private FileConfiguration messagesConfig;
+    private final File messagesFile;
 
     public Messages(RemmyChat plugin) {
         this.plugin = plugin;
-        loadMessages();
+        this.messagesFile = new File(plugin.getDataFolder(), "messages.yml");
     }
 
-    private void loadMessages() {
-        if (messagesFile == null) {
-            messagesFile = new File(plugin.getDataFolder(), "messages.yml");
-        }
-
+    /**
+     * Reads messages.yml with the bundled file as defaults. Nothing is kept here; the result is
+     * published by ConfigManager together with the config it was loaded with.
+     * @return The parsed messages
+     */
+    public FileConfiguration load() {
         if (!messagesFile.exists()) {
             plugin.saveResource("messages.yml", false);
         }
 
-        messagesConfig = YamlConfiguration.loadConfiguration(messagesFile);
+        FileConfiguration loaded = YamlConfiguration.loadConfiguration(messagesFile);
 
         try (InputStream defaultStream = plugin.getResource("messages.yml")) {
             if (defaultStream != null) {
                 YamlConfiguration defaultConfig = YamlConfiguration.loadConfiguration(
                         new InputStreamReader(defaultStream, StandardCharsets.UTF_8));
-                messagesConfig.setDefaults(defaultConfig);
+                loaded.setDefaults(defaultConfig);
             }
         } catch (IOException e) {
             plugin.getLogger().severe("Could not load default messages.yml: " + e.getMessage());
         }
+        return loaded;
     }
 
-    public void reloadMessages() {
-        loadMessages();
+    public String getMessage(String path) {
+        return getMessage(getMessagesConfig(), path);
     }
 
-    public String getMessage(String path) {
-        return messagesConfig.getString(path, "Message not found: " + path);
+    /**
+     * Gets a message from a specific load of messages.yml
+     * @param messages The parsed messages
+     * @param path The message path
+     * @return The message, or a placeholder text naming the path if it does not exist
+     */
+    public static String getMessage(FileConfiguration messages, String path) {
+        return messages.getString(path, "Message not found: " + path);
     }
 
     public FileConfiguration getMessagesConfig() {
-        return messagesConfig;
+        return plugin.getConfigManager().getLoaded().messages();
     }
-}
\ No newline at end of file
+}
@@ -1,147 +1,262 @@
 package com.noximity.remmyChat.database;
 
 import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.database.storage.BinaryLogBackend;
+import com.noximity.remmyChat.database.storage.H2Backend;
+import com.noximity.remmyChat.database.storage.SqliteBackend;
+import com.noximity.remmyChat.database.storage.StorageBackend;
+import com.noximity.remmyChat.database.storage.StorageException;
+import com.noximity.remmyChat.database.storage.UserData;
 import com.noximity.remmyChat.models.ChatUser;
-import org.bukkit.Bukkit;
 
 import java.io.File;
-import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 public class DatabaseManager {
 
+    private static final long BATCH_DELAY_MILLIS = 50;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long RETRY_DELAY_MILLIS = 5000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    // Queued by close() to wake the writer; compared by identity, never stored
+    private static final UUID STOP = new UUID(0, 0);
+
     private final RemmyChat plugin;
-    private Connection connection;
-    private final String dbName = "remmychat.db";
-    private File databaseFile;
+    private final StorageBackend backend;
+
+    // Latest unwritten state per user; a newer save for the same UUID replaces the older one
+    private final Map<UUID, UserData> pendingWrites = new ConcurrentHashMap<>();
+    // Records taken by the writer whose transaction has not committed yet
+    private final Map<UUID, UserData> inFlightWrites = new ConcurrentHashMap<>();
+    private final BlockingQueue<UUID> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private final CountDownLatch stopSignal = new CountDownLatch(1);
+
+    private final AtomicLong writesRequested = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
 
     public DatabaseManager(RemmyChat plugin) {
         this.plugin = plugin;
-        this.initialize();
-    }
-
-    private void initialize() {
         if (!plugin.getDataFolder().exists()) {
             plugin.getDataFolder().mkdirs();
         }
 
-        this.databaseFile = new File(plugin.getDataFolder(), dbName);
-
+        String type = plugin.getConfigManager().getSnapshot().getDatabaseType();
+        this.backend = createBackend(type, plugin.getDataFolder());
         try {
-            Class.forName("org.sqlite.JDBC");
-            String url = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
-
-            connection = DriverManager.getConnection(url);
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute("PRAGMA journal_mode = DELETE;");
-                stmt.execute("PRAGMA foreign_keys = ON;");
-            }
-
-            createTables();
-            plugin.getLogger().info("SQLite database connection established at: " + databaseFile.getAbsolutePath());
-        } catch (SQLException | ClassNotFoundException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to initialize SQLite database: " + e.getMessage(), e);
+            backend.open();
+        } catch (StorageException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to initialize " + backend.getName() + " storage: " + e.getMessage(), e);
         }
-    }
-
-    private void createTables() {
-        try (Statement statement = connection.createStatement()) {
-            statement.execute("CREATE TABLE IF NOT EXISTS users (" +
-                    "uuid VARCHAR(36) PRIMARY KEY, " +
-                    "msg_toggle BOOLEAN DEFAULT 1, " +
-                    "social_spy BOOLEAN DEFAULT 0, " +
-                    "current_channel VARCHAR(32) DEFAULT 'global')");
 
-            plugin.getLogger().info("Database tables created or already exist");
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to create database tables", e);
-        }
+        this.writerThread = new Thread(this::runWriter, "RemmyChat-DatabaseWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
     }
 
-    private boolean ensureConnection() {
-        try {
-            if (connection == null || connection.isClosed()) {
-                String url = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
-                connection = DriverManager.getConnection(url);
-                plugin.getLogger().info("Reconnected to database");
-                return true;
-            }
-            return true;
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to reconnect to database", e);
-            return false;
+    private StorageBackend createBackend(String type, File dataFolder) {
+        switch (type) {
+            case "sqlite":
+                return new SqliteBackend(dataFolder, plugin.getLogger());
+            case "h2":
+                return new H2Backend(dataFolder, plugin.getLogger());
+            case "binary-log":
+                return new BinaryLogBackend(dataFolder, plugin.getLogger());
+            default:
+                plugin.getLogger().warning("Unknown database type '" + type + "', using sqlite");
+                return new SqliteBackend(dataFolder, plugin.getLogger());
         }
     }
 
+    /**
+     * Stops the writer, writes everything still pending on the calling thread and closes the storage
+     */
     public void close() {
+        // The writer is never interrupted: an interrupt during file I/O closes the channel for good
+        // (ClosedByInterruptException), and the last batch written below would then be lost
+        running = false;
+        stopSignal.countDown();
+        writeQueue.add(STOP);
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                plugin.getLogger().info("Database connection closed");
-            }
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to close database connection", e);
+            writerThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        if (writerThread.isAlive()) {
+            plugin.getLogger().warning("The database writer did not stop in time, writing the remaining saves anyway");
+        }
+
+        // Whatever the writer did not get to is written here in one last batch
+        flushPending();
+
+        backend.close();
     }
 
+    /**
+     * Queues the user's current preferences for writing. Saves of the same user that are
+     * still waiting are merged, so only the latest state is written.
+     * @param user The user to save
+     */
     public void saveUserPreferences(ChatUser user) {
-        if (plugin.isEnabled()) {
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-                saveUserPreferencesSync(user);
-            });
-        } else {
+        UserData record = UserData.of(user);
+        writesRequested.incrementAndGet();
+        if (pendingWrites.put(record.uuid(), record) == null) {
+            writeQueue.add(record.uuid());
+        }
+    }
+
+    private void runWriter() {
+        while (running) {
             try {
-                if (connection != null && !connection.isClosed()) {
-                    connection.close();
+                UUID first = writeQueue.take();
+                if (first == STOP || !running) {
+                    // close() takes over the remaining writes
+                    return;
+                }
+                // Give saves that arrive right after (e.g. a toggle followed by quit) a moment to merge,
+                // unless the plugin is shutting down
+                stopSignal.await(BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                List<UUID> uuids = new ArrayList<>();
+                uuids.add(first);
+                writeQueue.drainTo(uuids, MAX_BATCH_SIZE - 1);
+                uuids.remove(STOP);
+                if (!writeBatch(uuids)) {
+                    // The records were queued again, retry later instead of spinning on a broken database
+                    stopSignal.await(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
                 }
-                ensureConnection();
-                saveUserPreferencesSync(user);
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.WARNING, "Could not refresh connection during shutdown: " + e.getMessage());
+            } catch (InterruptedException e) {
+                return;
             }
         }
     }
 
-    private void saveUserPreferencesSync(ChatUser user) {
-        if (!ensureConnection()) {
-            plugin.getLogger().warning("Cannot save user preferences - no database connection");
-            return;
+    private void flushPending() {
+        writeQueue.clear();
+        // Taken from the map rather than the queue, the writer may have stopped between the two
+        List<UUID> uuids = new ArrayList<>(pendingWrites.keySet());
+        if (!uuids.isEmpty()) {
+            writeBatch(uuids);
+        }
+    }
+
+    private boolean writeBatch(List<UUID> uuids) {
+        List<UserData> batch = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            UserData record = pendingWrites.remove(uuid);
+            if (record != null) {
+                inFlightWrites.put(uuid, record);
+                batch.add(record);
+            }
+        }
+        if (batch.isEmpty()) {
+            return true;
         }
 
-        try (PreparedStatement ps = connection.prepareStatement(
-                "INSERT OR REPLACE INTO users (uuid, msg_toggle, social_spy, current_channel) VALUES (?, ?, ?, ?)")) {
-            ps.setString(1, user.getUuid().toString());
-            ps.setBoolean(2, user.isMsgToggle());
-            ps.setBoolean(3, user.isSocialSpy());
-            ps.setString(4, user.getCurrentChannel());
-            ps.executeUpdate();
-        } catch (SQLException e) {
+        long start = System.nanoTime();
+        boolean written = false;
+        try {
+            backend.saveAll(batch);
+            written = true;
+        } catch (StorageException e) {
             plugin.getLogger().log(Level.SEVERE, "Failed to save user preferences: " + e.getMessage(), e);
         }
+
+        for (UserData record : batch) {
+            inFlightWrites.remove(record.uuid(), record);
+            if (!written) {
+                // Keep the record for the next flush unless a newer one was queued meanwhile
+                if (pendingWrites.putIfAbsent(record.uuid(), record) == null) {
+                    writeQueue.add(record.uuid());
+                }
+            }
+        }
+
+        if (written) {
+            long elapsed = System.nanoTime() - start;
+            rowsWritten.addAndGet(batch.size());
+            batchesWritten.incrementAndGet();
+            totalFlushNanos.addAndGet(elapsed);
+            lastFlushNanos = elapsed;
+            if (elapsed > maxFlushNanos) {
+                maxFlushNanos = elapsed;
+            }
+            plugin.debugLog(String.format("Wrote %d user(s) in %.2f ms, %d still queued",
+                    batch.size(), elapsed / 1_000_000.0, getQueueDepth()));
+        }
+        return written;
     }
 
-    public ChatUser loadUserPreferences(UUID uuid, String defaultChannel) {
-        try (PreparedStatement ps = connection.prepareStatement(
-                "SELECT msg_toggle, social_spy, current_channel FROM users WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
+    /**
+     * @return The number of users waiting to be written
+     */
+    public int getQueueDepth() {
+        return pendingWrites.size() + inFlightWrites.size();
+    }
 
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    boolean msgToggle = rs.getBoolean("msg_toggle");
-                    boolean socialSpy = rs.getBoolean("social_spy");
-                    String savedChannel = rs.getString("current_channel");
+    /**
+     * @return How many saves were requested, before merging
+     */
+    public long getWritesRequested() {
+        return writesRequested.get();
+    }
 
-                    String channelToUse = savedChannel != null && !savedChannel.isEmpty() ?
-                            savedChannel : defaultChannel;
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
 
-                    return new ChatUser(uuid, channelToUse, msgToggle, socialSpy);
-                }
-            }
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to load user preferences", e);
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    /**
+     * @return The average time a batch transaction took, in milliseconds
+     */
+    public double getAverageFlushMillis() {
+        long batches = batchesWritten.get();
+        return batches == 0 ? 0 : totalFlushNanos.get() / (batches * 1_000_000.0);
+    }
+
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1_000_000.0;
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1_000_000.0;
+    }
+
+    public ChatUser loadUserPreferences(UUID uuid, String defaultChannel) {
+        // An unwritten save is newer than the row in the database
+        UserData unwritten = pendingWrites.get(uuid);
+        if (unwritten == null) {
+            unwritten = inFlightWrites.get(uuid);
+        }
+        if (unwritten != null) {
+            return unwritten.toChatUser(defaultChannel);
         }
 
+        try {
+            UserData stored = backend.load(uuid);
+            if (stored != null) {
+                return stored.toChatUser(defaultChannel);
+            }
+        } catch (StorageException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to load user preferences: " + e.getMessage(), e);
+        }
         return new ChatUser(uuid, defaultChannel);
     }
 }
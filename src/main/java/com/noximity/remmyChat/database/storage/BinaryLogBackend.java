@@ -0,0 +1,295 @@
+package com.noximity.remmyChat.database.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps every user in memory and appends each save to a log file, so a save is one
+ * sequential write and one fsync no matter how many users it holds.
+ * <p>
+ * The log starts with a header and is followed by records of the form
+ * {@code length, payload, crc32}. On open the log is replayed and the last record for a
+ * UUID wins; a torn or corrupt tail from a crash is cut off. Once the log holds more than
+ * twice as many records as there are users it is compacted by writing the live records to
+ * a new file and moving it over the old one.
+ */
+public class BinaryLogBackend implements StorageBackend {
+
+    private static final int MAGIC = 0x5243554C; // "RCUL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+    private static final int FLAG_MSG_TOGGLE = 1;
+    private static final int FLAG_SOCIAL_SPY = 2;
+
+    private final Path logFile;
+    private final Path tempFile;
+    private final Logger logger;
+    private final Map<UUID, UserData> users = new ConcurrentHashMap<>();
+    private FileChannel channel;
+    // Length of the log up to the last complete append; anything past it is a failed write
+    private long validLength;
+    private long recordCount;
+
+    public BinaryLogBackend(File dataFolder, Logger logger) {
+        this.logFile = new File(dataFolder, "users.log").toPath();
+        this.tempFile = new File(dataFolder, "users.log.tmp").toPath();
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "binary log";
+    }
+
+    @Override
+    public synchronized void open() throws StorageException {
+        try {
+            // Left over from a compaction that did not finish, the log itself is still complete
+            Files.deleteIfExists(tempFile);
+
+            long readable = Files.exists(logFile) ? replay() : 0;
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (readable == 0) {
+                channel.truncate(0);
+                writeFully(channel, header());
+                channel.force(true);
+            } else if (channel.size() > readable) {
+                logger.warning("Discarding " + (channel.size() - readable) +
+                        " unreadable byte(s) at the end of " + logFile.getFileName());
+                channel.truncate(readable);
+                channel.force(true);
+            }
+            validLength = channel.size();
+            channel.position(validLength);
+            logger.info("Binary log store opened with " + users.size() + " user(s) from " + recordCount + " record(s)");
+        } catch (IOException e) {
+            throw new StorageException("Failed to open " + logFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the log into memory
+     * @return The length of the readable part of the log, 0 if the log has no valid header
+     */
+    private long replay() throws IOException, StorageException {
+        try (InputStream stream = Files.newInputStream(logFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024))) {
+            int magic;
+            int version;
+            try {
+                magic = in.readInt();
+                version = in.readInt();
+            } catch (EOFException e) {
+                return 0;
+            }
+            if (magic != MAGIC) {
+                throw new StorageException(logFile.getFileName() + " is not a RemmyChat user log");
+            }
+            if (version != FORMAT_VERSION) {
+                throw new StorageException("Unsupported user log version " + version);
+            }
+
+            long validLength = HEADER_SIZE;
+            byte[] payload = new byte[MAX_RECORD_SIZE];
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    in.readFully(payload, 0, length);
+                    int checksum = in.readInt();
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+
+                UserData data = decode(payload, length);
+                users.put(data.uuid(), data);
+                recordCount++;
+                validLength += 4 + length + 4;
+            }
+            return validLength;
+        }
+    }
+
+    @Override
+    public UserData load(UUID uuid) {
+        return users.get(uuid);
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<UserData> batch) throws StorageException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (channel == null) {
+            throw new StorageException("The user log is not open");
+        }
+
+        try {
+            ensureChannel();
+            writeFully(channel, ByteBuffer.wrap(encodeRecords(batch)));
+            channel.force(false);
+            validLength = channel.position();
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                // Cut off a partial append, records written after it would be lost on replay.
+                // A closed channel is cut back by ensureChannel on the next save instead.
+                try {
+                    channel.truncate(validLength);
+                    channel.position(validLength);
+                } catch (IOException ignored) {
+                }
+            }
+            throw new StorageException("Failed to append to " + logFile.getFileName() + ": " + e.getMessage(), e);
+        }
+
+        for (UserData data : batch) {
+            users.put(data.uuid(), data);
+        }
+        recordCount += batch.size();
+
+        if (recordCount > COMPACT_MIN_RECORDS && recordCount > 2L * users.size()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The appended records are already safe, compaction is retried after the next save
+                logger.log(Level.WARNING, "Failed to compact " + logFile.getFileName(), e);
+                try {
+                    Files.deleteIfExists(tempFile);
+                    ensureChannel();
+                } catch (IOException reopen) {
+                    throw new StorageException("Failed to reopen " + logFile.getFileName(), reopen);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reopens the log if its channel was closed, e.g. by an interrupt during a write,
+     * dropping whatever a failed append left past the last complete one
+     */
+    private void ensureChannel() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            return;
+        }
+        channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        logger.info("Reopened " + logFile.getFileName());
+    }
+
+    private void compact() throws IOException {
+        long before = recordCount;
+        long compactedLength;
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, header());
+            writeFully(out, ByteBuffer.wrap(encodeRecords(users.values())));
+            out.force(true);
+            compactedLength = out.size();
+        }
+
+        // Left closed rather than null if anything below fails, so ensureChannel reopens it
+        channel.close();
+        Files.move(tempFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        validLength = compactedLength;
+        channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(validLength);
+        recordCount = users.size();
+        logger.fine("Compacted " + logFile.getFileName() + " from " + before + " to " + recordCount + " record(s)");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null || !channel.isOpen()) {
+            channel = null;
+            return;
+        }
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to close " + logFile.getFileName(), e);
+        }
+        channel = null;
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+    }
+
+    private static byte[] encodeRecords(Collection<UserData> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        CRC32 crc = new CRC32();
+        for (UserData data : records) {
+            payloadBytes.reset();
+            payload.writeLong(data.uuid().getMostSignificantBits());
+            payload.writeLong(data.uuid().getLeastSignificantBits());
+            payload.writeByte((data.msgToggle() ? FLAG_MSG_TOGGLE : 0) | (data.socialSpy() ? FLAG_SOCIAL_SPY : 0));
+            payload.writeUTF(data.currentChannel());
+            payload.writeLong(data.lastSeen());
+
+            byte[] record = payloadBytes.toByteArray();
+            if (record.length > MAX_RECORD_SIZE) {
+                throw new IOException("Record of " + data.uuid() + " is too large");
+            }
+            crc.reset();
+            crc.update(record);
+            out.writeInt(record.length);
+            out.write(record);
+            out.writeInt((int) crc.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static UserData decode(byte[] payload, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+        int flags = in.readUnsignedByte();
+        String channel = in.readUTF();
+        long lastSeen = in.readLong();
+        return new UserData(uuid, (flags & FLAG_MSG_TOGGLE) != 0, (flags & FLAG_SOCIAL_SPY) != 0, channel, lastSeen);
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+}
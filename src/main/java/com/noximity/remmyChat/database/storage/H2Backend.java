@@ -0,0 +1,171 @@
+package com.noximity.remmyChat.database.storage;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores users in an embedded H2 database. Unlike SQLite, H2 handles concurrent readers
+ * and a writer inside one process well, so loads and the writer thread each take a
+ * connection from a small pool instead of queueing on a single one.
+ */
+public class H2Backend implements StorageBackend {
+
+    private static final int POOL_SIZE = 4;
+    private static final long BORROW_TIMEOUT_MILLIS = 5000;
+    private static final String SAVE_SQL = "MERGE INTO users " +
+            "(uuid, msg_toggle, social_spy, current_channel, last_seen) KEY (uuid) VALUES (?, ?, ?, ?, ?)";
+    private static final String LOAD_SQL =
+            "SELECT msg_toggle, social_spy, current_channel, last_seen FROM users WHERE uuid = ?";
+
+    private final File databaseFile;
+    private final Logger logger;
+    private final BlockingQueue<Connection> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final List<Connection> connections = new ArrayList<>(POOL_SIZE);
+    private String url;
+
+    public H2Backend(File dataFolder, Logger logger) {
+        // H2 appends .mv.db itself
+        this.databaseFile = new File(dataFolder, "remmychat-h2");
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "H2";
+    }
+
+    @Override
+    public synchronized void open() throws StorageException {
+        this.url = "jdbc:h2:file:" + databaseFile.getAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+        try {
+            Class.forName("org.h2.Driver");
+            for (int i = 0; i < POOL_SIZE; i++) {
+                Connection connection = DriverManager.getConnection(url);
+                connections.add(connection);
+                pool.add(connection);
+            }
+            try (Statement statement = connections.get(0).createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS users (" +
+                        "uuid UUID PRIMARY KEY, " +
+                        "msg_toggle BOOLEAN NOT NULL DEFAULT TRUE, " +
+                        "social_spy BOOLEAN NOT NULL DEFAULT FALSE, " +
+                        "current_channel VARCHAR(32) NOT NULL DEFAULT 'global', " +
+                        "last_seen BIGINT NOT NULL DEFAULT 0)");
+            }
+            logger.info("H2 database opened at: " + databaseFile.getAbsolutePath());
+        } catch (SQLException | ClassNotFoundException e) {
+            close();
+            throw new StorageException("Failed to initialize H2 database: " + e.getMessage(), e);
+        }
+    }
+
+    private Connection borrow() throws StorageException {
+        Connection connection;
+        try {
+            connection = pool.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for an H2 connection", e);
+        }
+        if (connection == null) {
+            throw new StorageException("Timed out waiting for an H2 connection");
+        }
+
+        try {
+            if (!connection.isClosed()) {
+                return connection;
+            }
+            // Replace a connection that broke while it was in use
+            Connection replacement = DriverManager.getConnection(url);
+            synchronized (this) {
+                connections.remove(connection);
+                connections.add(replacement);
+            }
+            return replacement;
+        } catch (SQLException e) {
+            // Keep the slot, the next borrow tries to reconnect again
+            release(connection);
+            throw new StorageException("Failed to reconnect to H2: " + e.getMessage(), e);
+        }
+    }
+
+    private void release(Connection connection) {
+        pool.offer(connection);
+    }
+
+    @Override
+    public UserData load(UUID uuid) throws StorageException {
+        Connection connection = borrow();
+        try (PreparedStatement ps = connection.prepareStatement(LOAD_SQL)) {
+            ps.setObject(1, uuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new UserData(uuid, rs.getBoolean(1), rs.getBoolean(2), rs.getString(3), rs.getLong(4));
+            }
+        } catch (SQLException e) {
+            throw new StorageException("Failed to load user preferences: " + e.getMessage(), e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<UserData> batch) throws StorageException {
+        Connection connection = borrow();
+        try (PreparedStatement ps = connection.prepareStatement(SAVE_SQL)) {
+            connection.setAutoCommit(false);
+            try {
+                for (UserData data : batch) {
+                    ps.setObject(1, data.uuid());
+                    ps.setBoolean(2, data.msgToggle());
+                    ps.setBoolean(3, data.socialSpy());
+                    ps.setString(4, data.currentChannel());
+                    ps.setLong(5, data.lastSeen());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StorageException("Failed to save user preferences: " + e.getMessage(), e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        pool.clear();
+        for (Connection connection : connections) {
+            try {
+                if (!connection.isClosed()) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Failed to close H2 connection", e);
+            }
+        }
+        connections.clear();
+    }
+}
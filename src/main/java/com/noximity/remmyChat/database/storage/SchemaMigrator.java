@@ -0,0 +1,134 @@
+package com.noximity.remmyChat.database.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Brings the SQLite schema up to date. Applied versions are recorded in schema_version and
+ * every migration runs in its own transaction, so a failed step leaves the previous schema
+ * intact. New migrations are appended to the list with the next version number.
+ */
+class SchemaMigrator {
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create users table", SchemaMigrator::createUsersTable),
+            new Migration(2, "Store UUIDs as 16-byte blobs and add last_seen", SchemaMigrator::binaryUuids)
+    );
+
+    private final Logger logger;
+
+    SchemaMigrator(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Applies every migration newer than the recorded schema version
+     * @param connection An open connection in auto-commit mode
+     * @throws SQLException If a migration fails; it is rolled back and later ones are skipped
+     */
+    public void migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "description TEXT NOT NULL, " +
+                    "applied_at INTEGER NOT NULL)");
+        }
+
+        int current = getCurrentVersion(connection);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() <= current) {
+                continue;
+            }
+
+            connection.setAutoCommit(false);
+            try {
+                migration.step().apply(connection);
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    ps.setInt(1, migration.version());
+                    ps.setString(2, migration.description());
+                    ps.setLong(3, System.currentTimeMillis());
+                    ps.executeUpdate();
+                }
+                connection.commit();
+                logger.info("Applied database migration " + migration.version() + ": " + migration.description());
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new SQLException("Database migration " + migration.version() + " failed: " + e.getMessage(), e);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void createUsersTable(Connection connection) throws SQLException {
+        // The original schema; databases from before versioning already have it
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS users (" +
+                    "uuid VARCHAR(36) PRIMARY KEY, " +
+                    "msg_toggle BOOLEAN DEFAULT 1, " +
+                    "social_spy BOOLEAN DEFAULT 0, " +
+                    "current_channel VARCHAR(32) DEFAULT 'global')");
+        }
+    }
+
+    private static void binaryUuids(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users_v2 (" +
+                    "uuid BLOB PRIMARY KEY CHECK (length(uuid) = 16), " +
+                    "msg_toggle BOOLEAN NOT NULL DEFAULT 1, " +
+                    "social_spy BOOLEAN NOT NULL DEFAULT 0, " +
+                    "current_channel VARCHAR(32) NOT NULL DEFAULT 'global', " +
+                    "last_seen INTEGER NOT NULL DEFAULT 0) WITHOUT ROWID");
+        }
+
+        // SQLite has no portable way to parse a UUID string, so the rows are copied through Java
+        try (Statement select = connection.createStatement();
+             ResultSet rs = select.executeQuery("SELECT uuid, msg_toggle, social_spy, current_channel FROM users");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT OR REPLACE INTO users_v2 (uuid, msg_toggle, social_spy, current_channel, last_seen) " +
+                             "VALUES (?, ?, ?, ?, 0)")) {
+            while (rs.next()) {
+                UUID uuid;
+                try {
+                    uuid = UUID.fromString(rs.getString(1));
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    continue;
+                }
+                String channel = rs.getString(4);
+                insert.setBytes(1, UserData.toBytes(uuid));
+                insert.setBoolean(2, rs.getBoolean(2));
+                insert.setBoolean(3, rs.getBoolean(3));
+                insert.setString(4, channel != null ? channel : "global");
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE users");
+            statement.execute("ALTER TABLE users_v2 RENAME TO users");
+        }
+    }
+
+    @FunctionalInterface
+    private interface MigrationStep {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private record Migration(int version, String description, MigrationStep step) {
+    }
+}
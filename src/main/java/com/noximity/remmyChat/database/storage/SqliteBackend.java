@@ -0,0 +1,180 @@
+package com.noximity.remmyChat.database.storage;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores users in a single SQLite file. Saves go through one write connection; loads use a
+ * separate read-only connection with its own lock, so in WAL mode a login load reads the
+ * last committed state instead of waiting for the writer thread's batch to commit.
+ */
+public class SqliteBackend implements StorageBackend {
+
+    private static final String SAVE_SQL = "INSERT OR REPLACE INTO users " +
+            "(uuid, msg_toggle, social_spy, current_channel, last_seen) VALUES (?, ?, ?, ?, ?)";
+    private static final String LOAD_SQL =
+            "SELECT msg_toggle, social_spy, current_channel, last_seen FROM users WHERE uuid = ?";
+
+    private final File databaseFile;
+    private final Logger logger;
+    private Connection connection;
+    private PreparedStatement saveStatement;
+    // Guards readConnection; the write connection is guarded by this
+    private final Object readLock = new Object();
+    private Connection readConnection;
+
+    public SqliteBackend(File dataFolder, Logger logger) {
+        this.databaseFile = new File(dataFolder, "remmychat.db");
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    @Override
+    public synchronized void open() throws StorageException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            connection = connect(false);
+            new SchemaMigrator(logger).migrate(connection);
+            synchronized (readLock) {
+                readConnection = connect(true);
+            }
+            logger.info("SQLite database connection established at: " + databaseFile.getAbsolutePath());
+        } catch (SQLException | ClassNotFoundException e) {
+            throw new StorageException("Failed to initialize SQLite database: " + e.getMessage(), e);
+        }
+    }
+
+    private Connection connect(boolean readOnly) throws SQLException {
+        Connection created = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try (Statement stmt = created.createStatement()) {
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = ON;");
+            } else {
+                // WAL lets the read connection read while this one commits. It is stored in the file,
+                // so only the write connection sets it.
+                stmt.execute("PRAGMA journal_mode = WAL;");
+            }
+            // NORMAL only syncs the WAL at checkpoints instead of on every commit
+            stmt.execute("PRAGMA synchronous = NORMAL;");
+            // Negative cache_size is in KiB
+            stmt.execute("PRAGMA cache_size = -8192;");
+            stmt.execute("PRAGMA temp_store = MEMORY;");
+            stmt.execute("PRAGMA busy_timeout = 5000;");
+            stmt.execute("PRAGMA foreign_keys = ON;");
+        }
+        return created;
+    }
+
+    private Connection ensureConnection() throws StorageException {
+        try {
+            if (connection == null || connection.isClosed()) {
+                connection = connect(false);
+                saveStatement = null;
+                logger.info("Reconnected to database");
+            }
+            return connection;
+        } catch (SQLException e) {
+            throw new StorageException("No database connection: " + e.getMessage(), e);
+        }
+    }
+
+    private Connection ensureReadConnection() throws StorageException {
+        try {
+            if (readConnection == null || readConnection.isClosed()) {
+                readConnection = connect(true);
+                logger.info("Reconnected to database for reading");
+            }
+            return readConnection;
+        } catch (SQLException e) {
+            throw new StorageException("No database connection: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public UserData load(UUID uuid) throws StorageException {
+        synchronized (readLock) {
+            Connection current = ensureReadConnection();
+            try (PreparedStatement ps = current.prepareStatement(LOAD_SQL)) {
+                ps.setBytes(1, UserData.toBytes(uuid));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    return new UserData(uuid, rs.getBoolean(1), rs.getBoolean(2), rs.getString(3), rs.getLong(4));
+                }
+            } catch (SQLException e) {
+                throw new StorageException("Failed to load user preferences: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<UserData> batch) throws StorageException {
+        Connection current = ensureConnection();
+        try {
+            if (saveStatement == null) {
+                saveStatement = current.prepareStatement(SAVE_SQL);
+            }
+            current.setAutoCommit(false);
+            try {
+                for (UserData data : batch) {
+                    saveStatement.setBytes(1, UserData.toBytes(data.uuid()));
+                    saveStatement.setBoolean(2, data.msgToggle());
+                    saveStatement.setBoolean(3, data.socialSpy());
+                    saveStatement.setString(4, data.currentChannel());
+                    saveStatement.setLong(5, data.lastSeen());
+                    saveStatement.addBatch();
+                }
+                saveStatement.executeBatch();
+                current.commit();
+            } catch (SQLException e) {
+                saveStatement.clearBatch();
+                current.rollback();
+                throw e;
+            } finally {
+                current.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StorageException("Failed to save user preferences: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (readLock) {
+            try {
+                if (readConnection != null && !readConnection.isClosed()) {
+                    readConnection.close();
+                }
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Failed to close database read connection", e);
+            }
+            readConnection = null;
+        }
+        try {
+            if (saveStatement != null) {
+                saveStatement.close();
+                saveStatement = null;
+            }
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+                logger.info("Database connection closed");
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to close database connection", e);
+        }
+    }
+}
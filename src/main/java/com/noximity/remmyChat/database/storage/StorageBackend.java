@@ -0,0 +1,52 @@
+package com.noximity.remmyChat.database.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persists user preferences. Implementations must be safe to call from several threads;
+ * DatabaseManager loads from login and chat threads while its writer thread saves.
+ */
+public interface StorageBackend {
+
+    /**
+     * @return A short name for logs, e.g. "SQLite"
+     */
+    String getName();
+
+    /**
+     * Opens files or connections and brings the schema up to date
+     * @throws StorageException If the store cannot be used
+     */
+    void open() throws StorageException;
+
+    /**
+     * Loads the stored preferences of a user
+     * @param uuid The user's UUID
+     * @return The stored data, or null if nothing is stored for the user
+     * @throws StorageException If the read fails
+     */
+    UserData load(UUID uuid) throws StorageException;
+
+    /**
+     * Saves one user
+     * @param data The data to store
+     * @throws StorageException If the write fails
+     */
+    default void save(UserData data) throws StorageException {
+        saveAll(List.of(data));
+    }
+
+    /**
+     * Saves several users at once, atomically where the store supports it
+     * @param batch The data to store, at most one entry per UUID
+     * @throws StorageException If the write fails; none of the batch should be considered stored
+     */
+    void saveAll(Collection<UserData> batch) throws StorageException;
+
+    /**
+     * Releases files and connections. Further calls are not allowed.
+     */
+    void close();
+}
@@ -0,0 +1,15 @@
+package com.noximity.remmyChat.database.storage;
+
+/**
+ * Thrown when a storage backend cannot read or write
+ */
+public class StorageException extends Exception {
+
+    public StorageException(String message) {
+        super(message);
+    }
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,53 @@
+package com.noximity.remmyChat.database.storage;
+
+import com.noximity.remmyChat.models.ChatUser;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * The stored part of a user's preferences, as it was when the save was requested
+ * @param uuid The user's UUID
+ * @param msgToggle Whether private messages are enabled
+ * @param socialSpy Whether social spy is enabled
+ * @param currentChannel The selected channel, empty for the default one
+ * @param lastSeen When the data was saved, in epoch milliseconds
+ */
+public record UserData(UUID uuid, boolean msgToggle, boolean socialSpy, String currentChannel, long lastSeen) {
+
+    public UserData {
+        if (currentChannel == null) {
+            currentChannel = "";
+        }
+    }
+
+    public static UserData of(ChatUser user) {
+        return new UserData(user.getUuid(), user.isMsgToggle(), user.isSocialSpy(),
+                user.getCurrentChannel(), System.currentTimeMillis());
+    }
+
+    public ChatUser toChatUser(String defaultChannel) {
+        String channel = !currentChannel.isEmpty() ? currentChannel : defaultChannel;
+        return new ChatUser(uuid, channel, msgToggle, socialSpy);
+    }
+
+    /**
+     * @param uuid A UUID
+     * @return The UUID as 16 big-endian bytes
+     */
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * @param bytes 16 big-endian bytes
+     * @return The UUID they encode
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,45 @@
+package com.noximity.remmyChat.listeners;
+
+import io.papermc.paper.chat.ChatRenderer;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Renders a chat message once per viewer variant instead of once per viewer.
+ * Viewers that map to the same variant share a single rendered component.
+ */
+public class CachedChatRenderer implements ChatRenderer {
+
+    private final ToIntFunction<Audience> variantOf;
+    private final IntFunction<Component> renderer;
+    private final Component[] rendered;
+
+    /**
+     * @param variants The number of distinct outputs
+     * @param variantOf Maps a viewer to its variant, from 0 to variants - 1
+     * @param renderer Renders the message for a variant
+     */
+    public CachedChatRenderer(int variants, ToIntFunction<Audience> variantOf, IntFunction<Component> renderer) {
+        this.variantOf = variantOf;
+        this.renderer = renderer;
+        this.rendered = new Component[variants];
+    }
+
+    @Override
+    public @NotNull Component render(@NotNull Player source, @NotNull Component sourceDisplayName,
+                                     @NotNull Component message, @NotNull Audience viewer) {
+        int variant = variantOf.applyAsInt(viewer);
+        Component component = rendered[variant];
+        if (component == null) {
+            // Components are immutable, a racing viewer at worst renders the same variant twice
+            component = renderer.apply(variant);
+            rendered[variant] = component;
+        }
+        return component;
+    }
+}
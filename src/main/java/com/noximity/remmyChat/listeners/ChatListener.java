@@ -3,25 +3,30 @@ package com.noximity.remmyChat.listeners;
 import com.noximity.remmyChat.RemmyChat;
 import com.noximity.remmyChat.models.Channel;
 import com.noximity.remmyChat.models.ChatUser;
+import com.noximity.remmyChat.services.MessageHistory;
+import com.noximity.remmyChat.services.PermissionService;
 import io.papermc.paper.event.player.AsyncChatEvent;
+import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 public class ChatListener implements Listener {
 
     private final RemmyChat plugin;
-    private final Map<UUID, Long> cooldowns = new HashMap<>();
 
     public ChatListener(RemmyChat plugin) {
         this.plugin = plugin;
@@ -29,6 +34,7 @@ public class ChatListener implements Listener {
 
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
     public void onChat(AsyncChatEvent event) {
+        // Cancelled unless the renderer mode hands delivery back to Paper below
         event.setCancelled(true);
 
         Player player = event.getPlayer();
@@ -39,22 +45,6 @@ public class ChatListener implements Listener {
             return;
         }
 
-        // Check cooldown
-        int cooldownTime = plugin.getConfigManager().getCooldown();
-        if (cooldownTime > 0) {
-            long lastMessageTime = cooldowns.getOrDefault(player.getUniqueId(), 0L);
-            long currentTime = System.currentTimeMillis();
-
-            if (currentTime - lastMessageTime < cooldownTime * 1000L) {
-                long remainingSeconds = (cooldownTime * 1000L - (currentTime - lastMessageTime)) / 1000;
-                player.sendMessage(plugin.getFormatService().formatSystemMessage("cooldown",
-                        net.kyori.adventure.text.minimessage.tag.resolver.Placeholder.parsed("seconds", String.valueOf(remainingSeconds))));
-                return;
-            }
-
-            cooldowns.put(player.getUniqueId(), currentTime);
-        }
-
         ChatUser chatUser = plugin.getChatService().getChatUser(player.getUniqueId());
         Channel currentChannel = plugin.getConfigManager().getChannel(chatUser.getCurrentChannel());
 
@@ -64,7 +54,7 @@ public class ChatListener implements Listener {
                 player.sendMessage(plugin.getFormatService().formatSystemMessage("error.no-default-channel"));
                 return;
             }
-            chatUser.setCurrentChannel(currentChannel.getName());
+            plugin.getChatService().setChannel(player.getUniqueId(), currentChannel.getName());
         }
 
         // Check permission for the channel
@@ -74,45 +64,108 @@ public class ChatListener implements Listener {
             return;
         }
 
+        // Check the rate limit
+        long waitMillis = plugin.getRateLimiter().tryAcquire(player, currentChannel.getName());
+        if (waitMillis > 0) {
+            long remainingSeconds = (waitMillis + 999) / 1000;
+            player.sendMessage(plugin.getFormatService().formatSystemMessage("cooldown",
+                    "seconds", String.valueOf(remainingSeconds)));
+            return;
+        }
+
         // Format the message
         Component formattedMessage = plugin.getFormatService().formatChatMessage(player, currentChannel.getName(), rawMessage);
         // Log the message to console
         String plainMessage = net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer.plainText().serialize(formattedMessage);
         plugin.getLogger().info(plainMessage);
-        if (currentChannel.getRadius() > 0) {
-            for (Player recipient : plugin.getServer().getOnlinePlayers()) {
-                if (player.getWorld().equals(recipient.getWorld()) &&
-                        player.getLocation().distance(recipient.getLocation()) <= currentChannel.getRadius()) {
-                    recipient.sendMessage(formattedMessage);
-                }
-            }
-        } else {
-            for (Player recipient : plugin.getServer().getOnlinePlayers()) {
-                ChatUser recipientUser = plugin.getChatService().getChatUser(recipient.getUniqueId());
-                if (recipientUser.getCurrentChannel().equals(currentChannel.getName())) {
-                    recipient.sendMessage(formattedMessage);
+
+        List<Player> recipients = collectRecipients(player, currentChannel);
+
+        MessageHistory history = plugin.getMessageHistory();
+        Set<Audience> staffViewers = Collections.emptySet();
+        Component staffMessage = null;
+        if (history.isEnabled()) {
+            // Staff get the same message with a delete button, built once for all of them
+            int messageId = history.nextId();
+            staffViewers = Collections.newSetFromMap(new IdentityHashMap<>());
+            PermissionService permissions = plugin.getPermissionService();
+            for (Player recipient : recipients) {
+                Component shown = formattedMessage;
+                if (permissions.canDeleteMessages(recipient)) {
+                    if (staffMessage == null) {
+                        staffMessage = history.withDeleteButton(formattedMessage, messageId);
+                    }
+                    shown = staffMessage;
+                    staffViewers.add(recipient);
                 }
+                history.record(recipient, messageId, shown);
             }
         }
+
+        if (plugin.getConfigManager().isChatRendererEnabled()) {
+            // Let Paper deliver the message to the channel's recipients in one broadcast
+            Set<Audience> viewers = event.viewers();
+            viewers.clear();
+            viewers.addAll(recipients);
+            Set<Audience> staff = staffViewers;
+            Component[] variants = {formattedMessage, staffMessage};
+            event.renderer(new CachedChatRenderer(2, viewer -> staff.contains(viewer) ? 1 : 0,
+                    variant -> variants[variant]));
+            event.setCancelled(false);
+            return;
+        }
+
+        for (Player recipient : recipients) {
+            recipient.sendMessage(staffViewers.contains(recipient) ? staffMessage : formattedMessage);
+        }
+    }
+
+    private List<Player> collectRecipients(Player player, Channel channel) {
+        if (channel.getRadius() > 0) {
+            return plugin.getPlayerGrid().getNearbyPlayers(player, channel.getRadius());
+        }
+
+        return new ArrayList<>(plugin.getChatService().getChannelMembers(channel.getName()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            // Runs on the login thread, so the database read stays off the main thread
+            plugin.getChatService().preloadChatUser(event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getChatService().discardPreloadedUser(event.getPlayer().getUniqueId());
+        }
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        // This will now load the saved channel from the database
+        plugin.getPlayerNameIndex().add(player);
+        // Promotes the preferences loaded during pre-login
         plugin.getChatService().createChatUser(player.getUniqueId());
+
+        if (plugin.getConfigManager().getSnapshot().isPlaceholderRefreshEnabled()) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin,
+                    () -> plugin.getPlaceholderCache().warm(player));
+        }
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
-        // Save user preferences including channel before removing from cache
-        ChatUser user = plugin.getChatService().getChatUser(player.getUniqueId());
-        if (user != null) {
-            plugin.getDatabaseManager().saveUserPreferences(user);
-        }
+        // Saves the user's preferences, including the channel, before removing them from the cache
         plugin.getChatService().removeChatUser(player.getUniqueId());
-        cooldowns.remove(player.getUniqueId());
+        plugin.getRateLimiter().remove(player.getUniqueId());
+        plugin.getPermissionService().remove(player.getUniqueId());
+        plugin.getPlayerNameIndex().remove(player);
+        plugin.getMessageHistory().remove(player.getUniqueId());
+        plugin.getPlaceholderCache().invalidate(player.getUniqueId());
     }
 }
 
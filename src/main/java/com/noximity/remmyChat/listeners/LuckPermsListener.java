@@ -0,0 +1,42 @@
+package com.noximity.remmyChat.listeners;
+
+import com.noximity.remmyChat.RemmyChat;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+
+import java.util.UUID;
+
+/**
+ * Listens to LuckPerms events. Only created once LuckPerms is known to be present,
+ * so the LuckPerms API classes are never loaded without it.
+ */
+public class LuckPermsListener {
+
+    private final RemmyChat plugin;
+    private EventSubscription<UserDataRecalculateEvent> recalculateSubscription;
+
+    public LuckPermsListener(RemmyChat plugin) {
+        this.plugin = plugin;
+    }
+
+    public void register() {
+        recalculateSubscription = LuckPermsProvider.get().getEventBus()
+                .subscribe(plugin, UserDataRecalculateEvent.class, this::onUserDataRecalculate);
+    }
+
+    public void unregister() {
+        if (recalculateSubscription != null) {
+            recalculateSubscription.close();
+            recalculateSubscription = null;
+        }
+    }
+
+    private void onUserDataRecalculate(UserDataRecalculateEvent event) {
+        // Groups or meta changed, the rendered sender prefix may be stale
+        UUID uuid = event.getUser().getUniqueId();
+        plugin.getFormatService().invalidateSender(uuid);
+        plugin.getRateLimiter().invalidate(uuid);
+        plugin.getPermissionService().invalidate(uuid);
+    }
+}
@@ -1,6 +1,8 @@
 package com.noximity.remmyChat.models;
 
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ChatUser {
 
@@ -9,6 +11,9 @@ public class ChatUser {
     private UUID lastMessagedPlayer;
     private boolean msgToggle;
     private boolean socialSpy;
+    // Bumped by every change to a stored preference, compared with the last saved version
+    private final AtomicLong version = new AtomicLong();
+    private volatile long savedVersion;
 
     public ChatUser(UUID uuid, String defaultChannel) {
         this.uuid = uuid;
@@ -33,7 +38,10 @@ public class ChatUser {
     }
 
     public void setCurrentChannel(String currentChannel) {
-        this.currentChannel = currentChannel;
+        if (!Objects.equals(this.currentChannel, currentChannel)) {
+            this.currentChannel = currentChannel;
+            version.incrementAndGet();
+        }
     }
 
     public UUID getLastMessagedPlayer() {
@@ -49,7 +57,10 @@ public class ChatUser {
     }
 
     public void setMsgToggle(boolean msgToggle) {
-        this.msgToggle = msgToggle;
+        if (this.msgToggle != msgToggle) {
+            this.msgToggle = msgToggle;
+            version.incrementAndGet();
+        }
     }
 
     public boolean isSocialSpy() {
@@ -57,6 +68,31 @@ public class ChatUser {
     }
 
     public void setSocialSpy(boolean socialSpy) {
-        this.socialSpy = socialSpy;
+        if (this.socialSpy != socialSpy) {
+            this.socialSpy = socialSpy;
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return A counter that changes whenever a stored preference changes
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return Whether a stored preference changed since the last save
+     */
+    public boolean isDirty() {
+        return version.get() != savedVersion;
+    }
+
+    /**
+     * Records that the preferences as of a version were handed to the database
+     * @param savedVersion The version read before saving
+     */
+    public void markSaved(long savedVersion) {
+        this.savedVersion = savedVersion;
     }
 }
\ No newline at end of file
@@ -6,12 +6,16 @@ public class GroupFormat {
     private final String nameStyle;
     private final String prefix;
     private final String format;
+    private final int priority;
+    private final String permission;
 
-    public GroupFormat(String name, String nameStyle, String prefix, String format) {
+    public GroupFormat(String name, String nameStyle, String prefix, String format, int priority) {
         this.name = name;
         this.nameStyle = nameStyle;
         this.prefix = prefix;
         this.format = format;
+        this.priority = priority;
+        this.permission = "group." + name;
     }
 
     public String getName() {
@@ -29,4 +33,18 @@ public class GroupFormat {
     public String getFormat() {
         return format;
     }
+
+    /**
+     * @return The weight of the group; when a player is in several groups, the highest wins
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return The permission LuckPerms grants to members of the group
+     */
+    public String getPermission() {
+        return permission;
+    }
 }
@@ -0,0 +1,13 @@
+package com.noximity.remmyChat.models;
+
+import net.kyori.adventure.text.Component;
+
+/**
+ * The rendered lines of one private message. All three share the same message body.
+ * A line is null when its format in messages.yml is empty.
+ * @param toSender The line shown to the sender
+ * @param toReceiver The line shown to the receiver
+ * @param toSpies The line shown to players with social spy enabled
+ */
+public record PrivateMessage(Component toSender, Component toReceiver, Component toSpies) {
+}
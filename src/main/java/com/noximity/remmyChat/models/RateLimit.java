@@ -0,0 +1,42 @@
+package com.noximity.remmyChat.models;
+
+public class RateLimit {
+
+    private final String name;
+    private final String permission;
+    private final int burst;
+    private final long refillMillis;
+
+    public RateLimit(String name, String permission, int burst, long refillMillis) {
+        this.name = name;
+        this.permission = permission;
+        this.burst = burst;
+        this.refillMillis = refillMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return How many messages can be sent back to back
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return Milliseconds it takes to regain one message
+     */
+    public long getRefillMillis() {
+        return refillMillis;
+    }
+
+    public boolean isUnlimited() {
+        return refillMillis <= 0;
+    }
+}
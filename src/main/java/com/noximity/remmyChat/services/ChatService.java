@@ -3,10 +3,11 @@ package com.noximity.remmyChat.services;
 import com.noximity.remmyChat.RemmyChat;
 import com.noximity.remmyChat.models.ChatUser;
 import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -14,32 +15,87 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ChatService {
 
     private final RemmyChat plugin;
-    private final Map<UUID, ChatUser> chatUsers = new HashMap<>();
+    private final Map<UUID, ChatUser> chatUsers = new ConcurrentHashMap<>();
+    private final Map<String, Map<UUID, Player>> channelMembers = new ConcurrentHashMap<>();
+    private final Map<UUID, StagedUser> stagedUsers = new ConcurrentHashMap<>();
+    // Replaced as a whole on every change, so private messages read it without locking
+    private volatile Player[] socialSpies = new Player[0];
+    private static final long STAGED_EXPIRY_MILLIS = 60_000;
 
     public ChatService(RemmyChat plugin) {
         this.plugin = plugin;
+
+        // Players already online when the plugin is enabled never fire a join event
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            createChatUser(player.getUniqueId());
+        }
+
+        long flushTicks = plugin.getConfigManager().getSnapshot().getDatabaseFlushInterval() * 20L;
+        if (flushTicks > 0) {
+            plugin.getServer().getScheduler().runTaskTimer(plugin, this::saveDirtyUsers, flushTicks, flushTicks);
+        }
     }
 
     public ChatUser getChatUser(UUID uuid) {
-        return chatUsers.computeIfAbsent(uuid, id -> {
+        ChatUser user = chatUsers.get(uuid);
+        if (user != null) {
+            return user;
+        }
+
+        user = chatUsers.computeIfAbsent(uuid, id -> {
             String defaultChannel = plugin.getConfigManager().getDefaultChannel().getName();
             return plugin.getDatabaseManager().loadUserPreferences(id, defaultChannel);
         });
+        addMember(user);
+        return user;
+    }
+
+    /**
+     * Loads a player's preferences ahead of their join. Meant for AsyncPlayerPreLoginEvent,
+     * so the database read happens on the login thread instead of the main thread. The
+     * server waits for that event before the player can join, so the record is always
+     * complete by the time createChatUser promotes it.
+     * @param uuid The UUID of the player logging in
+     */
+    public void preloadChatUser(UUID uuid) {
+        long now = System.currentTimeMillis();
+        // Logins that were refused later on never reach the join, forget them after a while
+        stagedUsers.values().removeIf(staged -> now - staged.stagedAt() > STAGED_EXPIRY_MILLIS);
+
+        if (chatUsers.containsKey(uuid)) {
+            return;
+        }
+
+        String defaultChannel = plugin.getConfigManager().getDefaultChannel().getName();
+        stagedUsers.put(uuid, new StagedUser(plugin.getDatabaseManager().loadUserPreferences(uuid, defaultChannel), now));
+    }
+
+    /**
+     * Drops a preloaded user whose login was refused
+     * @param uuid The UUID of the player
+     */
+    public void discardPreloadedUser(UUID uuid) {
+        stagedUsers.remove(uuid);
     }
 
     public void createChatUser(UUID uuid) {
-        if (!chatUsers.containsKey(uuid)) {
-            String defaultChannel = plugin.getConfigManager().getDefaultChannel().getName();
-            ChatUser user = plugin.getDatabaseManager().loadUserPreferences(uuid, defaultChannel);
-            chatUsers.put(uuid, user);
+        StagedUser staged = stagedUsers.remove(uuid);
+        if (staged != null) {
+            chatUsers.putIfAbsent(uuid, staged.user());
         }
+
+        // The user may already be cached from before the player was online
+        addMember(getChatUser(uuid));
     }
 
     public void removeChatUser(UUID uuid) {
-        if (chatUsers.containsKey(uuid)) {
-            plugin.getDatabaseManager().saveUserPreferences(chatUsers.get(uuid));
-            chatUsers.remove(uuid);
+        stagedUsers.remove(uuid);
+        ChatUser user = chatUsers.remove(uuid);
+        if (user != null) {
+            saveChatUser(user);
         }
+        removeMember(uuid);
+        plugin.getFormatService().invalidateSender(uuid);
     }
 
     public boolean setChannel(UUID uuid, String channel) {
@@ -47,24 +103,124 @@ public class ChatService {
             return false;
         }
 
-        getChatUser(uuid).setCurrentChannel(channel);
+        ChatUser user = getChatUser(uuid);
+        String previous = user.getCurrentChannel();
+        user.setCurrentChannel(channel);
+        if (!channel.equals(previous)) {
+            Map<UUID, Player> previousMembers = channelMembers.get(previous);
+            if (previousMembers != null) {
+                previousMembers.remove(uuid);
+            }
+            addMember(user);
+        }
+        plugin.getFormatService().invalidateSender(uuid);
         return true;
     }
 
-    public void saveAllUsers() {
-        List<ChatUser> users = new ArrayList<>(chatUsers.values());
-        for (ChatUser user : users) {
-            plugin.getDatabaseManager().saveUserPreferences(user);
+    /**
+     * Turns social spy on or off for a user and updates the spy registry
+     * @param uuid The user's UUID
+     * @param enabled Whether the user should see private messages
+     */
+    public void setSocialSpy(UUID uuid, boolean enabled) {
+        ChatUser user = getChatUser(uuid);
+        user.setSocialSpy(enabled);
+        if (enabled) {
+            Player player = plugin.getServer().getPlayer(uuid);
+            if (player != null) {
+                addSpy(player);
+            }
+        } else {
+            removeSpy(uuid);
         }
     }
 
-    public List<ChatUser> getSocialSpyUsers() {
-        List<ChatUser> spyUsers = new ArrayList<>();
-        for (ChatUser user : chatUsers.values()) {
-            if (user.isSocialSpy()) {
-                spyUsers.add(user);
+    /**
+     * Gets the online players with social spy enabled
+     * @return A snapshot of the spies, do not modify it
+     */
+    public Player[] getSocialSpies() {
+        return socialSpies;
+    }
+
+    private synchronized void addSpy(Player player) {
+        Player[] current = socialSpies;
+        for (Player spy : current) {
+            if (spy.getUniqueId().equals(player.getUniqueId())) {
+                return;
             }
         }
-        return spyUsers;
+        Player[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = player;
+        socialSpies = updated;
+    }
+
+    private synchronized void removeSpy(UUID uuid) {
+        Player[] current = socialSpies;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].getUniqueId().equals(uuid)) {
+                Player[] updated = new Player[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                socialSpies = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the online players whose current channel is the given one
+     * @param channel The channel name
+     * @return A live view of the members
+     */
+    public Collection<Player> getChannelMembers(String channel) {
+        Map<UUID, Player> members = channelMembers.get(channel);
+        return members != null ? Collections.unmodifiableCollection(members.values()) : Collections.emptyList();
+    }
+
+    private void removeMember(UUID uuid) {
+        for (Map<UUID, Player> members : channelMembers.values()) {
+            members.remove(uuid);
+        }
+        removeSpy(uuid);
+    }
+
+    private void addMember(ChatUser user) {
+        Player player = plugin.getServer().getPlayer(user.getUuid());
+        if (player == null) {
+            // Offline users (e.g. the target of a reply) are loaded but never receive channel chat
+            return;
+        }
+        channelMembers.computeIfAbsent(user.getCurrentChannel(), name -> new ConcurrentHashMap<>())
+                .put(user.getUuid(), player);
+        if (user.isSocialSpy()) {
+            addSpy(player);
+        }
+    }
+
+    /**
+     * Queues a user for saving if a stored preference changed since the last save
+     * @param user The user to save
+     */
+    public void saveChatUser(ChatUser user) {
+        if (!user.isDirty()) {
+            return;
+        }
+        long version = user.getVersion();
+        plugin.getDatabaseManager().saveUserPreferences(user);
+        user.markSaved(version);
+    }
+
+    /**
+     * Queues every cached user with unsaved changes. Runs periodically and on shutdown,
+     * where the database then writes them all in a single transaction.
+     */
+    public void saveDirtyUsers() {
+        for (ChatUser user : chatUsers.values()) {
+            saveChatUser(user);
+        }
+    }
+
+    private record StagedUser(ChatUser user, long stagedAt) {
     }
-}
\ No newline at end of file
+}
@@ -1,360 +1,656 @@
 package com.noximity.remmyChat.services;
 
 import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.config.ConfigSnapshot;
+import com.noximity.remmyChat.config.LoadedConfig;
+import com.noximity.remmyChat.config.Messages;
 import com.noximity.remmyChat.models.Channel;
 import com.noximity.remmyChat.models.GroupFormat;
+import com.noximity.remmyChat.models.PrivateMessage;
+import com.noximity.remmyChat.utils.ComponentTemplate;
+import com.noximity.remmyChat.utils.PlaceholderReplacer;
 import me.clip.placeholderapi.PlaceholderAPI;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.TextComponent;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 import net.kyori.adventure.text.minimessage.MiniMessage;
-import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.UUID;
 
 public class FormatService {
 
     private final RemmyChat plugin;
     private final MiniMessage miniMessage;
-    private final Pattern urlPattern = Pattern.compile("(https?://[\\w-]+(\\.[\\w-]+)+([\\w.,@?^=%&:/~+#-]*[\\w@?^=%&/~+#-])?)");
-    private static final Pattern SYMBOL_PATTERN = Pattern.compile("(?i):([a-z0-9_-]+):");
+    private final MiniMessage templateMiniMessage;
+    private static final String NO_GROUP = "";
+    private static final String[] STRING_SLOTS = {"%player_name%", "%display_name%"};
+    private static final String[] COMPONENT_SLOTS = {"message"};
+    private static final PlaceholderReplacer CHAT_FORMAT_TOKENS =
+            PlaceholderReplacer.compile("%channel_prefix%", "%group_prefix%", "%name%", "%message%");
+    private static final PlaceholderReplacer GROUP_FORMAT_TOKENS = PlaceholderReplacer.compile("%channel_name%", "%message%");
+    private static final PlaceholderReplacer CHANNEL_NAME_TOKEN = PlaceholderReplacer.compile("%channel_name%");
+    private static final PlaceholderReplacer PLAYER_NAME_TOKEN = PlaceholderReplacer.compile("%player_name%");
+    private static final String[] PM_NAME_SLOTS = {"<player>"};
+    private static final String[] SPY_NAME_SLOTS = {"<sender>", "<receiver>"};
+    private static final Pattern SYSTEM_PLACEHOLDER = Pattern.compile("<([A-Za-z0-9_-]+)>");
+    private static final TagResolver STANDARD_TAGS = TagResolver.standard();
+    private final Map<UUID, SenderFormat> senderFormats = new ConcurrentHashMap<>();
 
     public FormatService(RemmyChat plugin) {
         this.plugin = plugin;
         this.miniMessage = MiniMessage.miniMessage();
+        // Compaction would merge the slot markers into their parents, so templates are kept as parsed
+        this.templateMiniMessage = MiniMessage.builder().postProcessor(UnaryOperator.identity()).build();
     }
 
-    public Component formatChatMessage(Player player, String channelName, String message) {
-        String playerName = player.getName();
-        String displayName = player.getDisplayName();
-        Component messageComponent = formatMessageContent(player, message);
-
-        // Debug settings
-        boolean debugEnabled = plugin.getConfig().getBoolean("debug.enabled", false);
-        boolean debugFormatProcessing = debugEnabled && plugin.getConfig().getBoolean("debug.format-processing", false);
-        boolean debugGroupSelection = debugEnabled && plugin.getConfig().getBoolean("debug.group-selection", false);
-
-        // Get the channel
-        Channel channel = plugin.getConfigManager().getChannel(channelName);
-        if (channel == null) {
-            channel = plugin.getConfigManager().getDefaultChannel();
+    /**
+     * Compiles the chat formats of every channel and group, the symbol table, the URL style and
+     * messages.yml. Nothing is published here; ConfigManager publishes the result together with
+     * the config it was compiled from.
+     * @param config The configuration to compile
+     * @param customPlaceholders The custom placeholders of the same configuration
+     * @param messages The parsed messages.yml
+     * @return The compiled formats
+     */
+    public Formats compile(ConfigSnapshot config, PlaceholderReplacer customPlaceholders, FileConfiguration messages) {
+        Map<String, Map<String, ComponentTemplate>> templates = compileTemplates(config, customPlaceholders);
+
+        List<String> parsedSources = new ArrayList<>();
+        for (Map<String, ComponentTemplate> channelTemplates : templates.values()) {
+            for (ComponentTemplate template : channelTemplates.values()) {
+                if (!template.isPrecompiled()) {
+                    parsedSources.add(template.getSource());
+                }
+            }
         }
 
-        // Get channel display name if it exists
-        String channelDisplayName = "";
-        if (channel != null && channel.hasDisplayName()) {
-            channelDisplayName = channel.getDisplayName() + " ";
-        }
+        PrivateMessageTemplates privateMessageTemplates = new PrivateMessageTemplates(
+                compileMessageTemplate(messages, "msg-to-format", PM_NAME_SLOTS),
+                compileMessageTemplate(messages, "msg-from-format", PM_NAME_SLOTS),
+                compileMessageTemplate(messages, "socialspy-format", SPY_NAME_SLOTS));
 
-        // The default formatting approach using templates
-        String channelPrefixRef = channel.getPrefix();
-        String channelPrefix = "";
+        return new Formats(templates, compileSymbols(config.getSymbolMappings()), compileUrlStyle(config),
+                privateMessageTemplates, compileSystemMessages(messages), parsedSources);
+    }
 
-        // If using group formats with LuckPerms
-        if (plugin.getConfigManager().isUseGroupFormat() && plugin.getPermissionService().isLuckPermsHooked()) {
-            GroupFormat groupFormat = plugin.getPermissionService().getHighestGroupFormat(player);
+    /**
+     * Compiles messages.yml into the system message catalog
+     */
+    private Map<String, SystemMessage> compileSystemMessages(FileConfiguration messages) {
+        Set<String> paths = new LinkedHashSet<>(messages.getKeys(true));
+        if (messages.getDefaults() != null) {
+            paths.addAll(messages.getDefaults().getKeys(true));
+        }
 
-            // Debug info for group selection
-            if (debugGroupSelection) {
-                if (groupFormat != null) {
-                    plugin.debugLog("Using group format for player " + playerName + ": " + groupFormat.getName());
-                    plugin.debugLog("Format string: " + groupFormat.getFormat());
-                } else {
-                    plugin.debugLog("No group format found for player " + playerName);
-                }
+        Map<String, SystemMessage> catalog = new HashMap<>();
+        for (String path : paths) {
+            if (messages.isString(path)) {
+                catalog.put(path, compileSystemMessage(path, messages.getString(path)));
             }
+        }
+        return catalog;
+    }
 
-            // If we have a custom format for this group, use it directly
-            if (groupFormat != null && !groupFormat.getFormat().isEmpty()) {
-                // Process custom format with our placeholders system
-                String customFormat = groupFormat.getFormat();
+    private SystemMessage compileSystemMessage(String path, String message) {
+        if (message == null || message.trim().isEmpty()) {
+            return SystemMessage.EMPTY;
+        }
 
-                if (debugFormatProcessing) {
-                    plugin.debugLog("Original format: " + customFormat);
-                }
+        // Any tag MiniMessage does not know is a placeholder; callers name the ones they fill
+        Set<String> names = new LinkedHashSet<>();
+        Matcher matcher = SYSTEM_PLACEHOLDER.matcher(message);
+        while (matcher.find()) {
+            if (!STANDARD_TAGS.has(matcher.group(1).toLowerCase(Locale.ROOT))) {
+                names.add(matcher.group(1));
+            }
+        }
 
-                // Important: First apply custom placeholders
-                customFormat = plugin.getPlaceholderManager().applyCustomPlaceholders(customFormat);
+        try {
+            if (names.isEmpty()) {
+                return new SystemMessage(miniMessage.deserialize(message), null, new String[0], new String[0]);
+            }
 
-                if (debugFormatProcessing) {
-                    plugin.debugLog("After custom placeholder processing: " + customFormat);
-                }
+            String[] slotNames = names.toArray(new String[0]);
+            String[] tokens = new String[slotNames.length];
+            for (int i = 0; i < slotNames.length; i++) {
+                tokens[i] = "<" + slotNames[i] + ">";
+            }
+            ComponentTemplate template = ComponentTemplate.compile(templateMiniMessage, message, tokens,
+                    new String[0], null);
+            // Unfilled placeholders show as written, which keeps usage lines such as "/msg <player>" intact
+            Component unfilled = template.render(tokens, null, null);
+            return new SystemMessage(unfilled, template, slotNames, tokens);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error compiling system message " + path + ": " + e.getMessage());
+            return new SystemMessage(Component.text("Error in formatting system message"), null,
+                    new String[0], new String[0]);
+        }
+    }
 
-                // Add the channel display name if it exists
-                if (!channelDisplayName.isEmpty()) {
-                    customFormat = channelDisplayName + customFormat;
-                }
+    private ComponentTemplate compileMessageTemplate(FileConfiguration messages, String path, String[] nameSlots) {
+        String message = Messages.getMessage(messages, path);
+        if (message == null || message.trim().isEmpty()) {
+            return null;
+        }
+        // Names are string slots so they also work inside click and hover values, the body is a component
+        return ComponentTemplate.compile(templateMiniMessage, message, nameSlots, COMPONENT_SLOTS, null);
+    }
 
-                // Then replace the special placeholders that need direct substitution
-                customFormat = customFormat.replace("%player_name%", playerName);
-                customFormat = customFormat.replace("%display_name%", displayName);
-                customFormat = customFormat.replace("%channel_name%", channelDisplayName.trim());
+    /**
+     * Compiles the chat formats of every channel and group into templates, keyed by channel and group name
+     */
+    private Map<String, Map<String, ComponentTemplate>> compileTemplates(ConfigSnapshot config,
+                                                                      PlaceholderReplacer customPlaceholders) {
+        Map<String, Map<String, ComponentTemplate>> compiled = new HashMap<>();
+
+        for (Channel channel : config.getChannels().values()) {
+            Map<String, ComponentTemplate> channelTemplates = new HashMap<>();
+            channelTemplates.put(NO_GROUP, compileTemplateFormat(config, customPlaceholders, channel, null));
+
+            for (GroupFormat groupFormat : config.getGroupFormats().values()) {
+                ComponentTemplate template = groupFormat.getFormat().isEmpty()
+                        ? compileTemplateFormat(config, customPlaceholders, channel, groupFormat)
+                        : compileGroupFormat(config, customPlaceholders, channel, groupFormat);
+                channelTemplates.put(groupFormat.getName(), template);
+            }
 
-                // Replace %message% with component placeholder - must be done after other placeholder processing
-                // but before MiniMessage deserialization
-                customFormat = customFormat.replace("%message%", "<message>");
+            compiled.put(channel.getName(), channelTemplates);
+        }
+        return compiled;
+    }
 
-                if (debugFormatProcessing) {
-                    plugin.debugLog("Final format before deserialization: " + customFormat);
-                }
+    private SymbolTable compileSymbols(Map<String, String> symbols) {
+        String[] keys = new String[symbols.size()];
+        String[] values = new String[symbols.size()];
+        int index = 0;
+        for (Map.Entry<String, String> entry : symbols.entrySet()) {
+            keys[index] = entry.getKey().toLowerCase(Locale.ROOT);
+            values[index] = entry.getValue();
+            index++;
+        }
+        return new SymbolTable(keys, values);
+    }
 
-                // Apply PAPI placeholders if available
-                if (plugin.getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
-                    customFormat = PlaceholderAPI.setPlaceholders(player, customFormat);
-                }
+    private Style compileUrlStyle(ConfigSnapshot config) {
+        Style.Builder style = Style.style();
 
-                try {
-                    return miniMessage.deserialize(customFormat, TagResolver.builder()
-                            .resolver(Placeholder.component("message", messageComponent))
-                            .build());
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Error formatting custom message: " + e.getMessage());
-                    if (debugFormatProcessing) {
-                        plugin.getLogger().warning("Failed format: " + customFormat);
-                    }
-                    return Component.text("Error in formatting: " + PlainTextComponentSerializer.plainText().serialize(messageComponent));
-                }
+        String colorHex = config.getUrlColor();
+        if (!colorHex.isEmpty()) {
+            TextColor color = TextColor.fromHexString(colorHex);
+            if (color != null) {
+                style.color(color);
+            } else {
+                plugin.getLogger().warning("Invalid color in URL format: " + colorHex);
             }
+        }
 
-            // Otherwise fallback to the old template system
-            String nameStyle = "default";
-            String groupPrefixRef = "";
+        if (config.isUrlUnderline()) {
+            style.decoration(TextDecoration.UNDERLINED, true);
+        }
 
-            if (groupFormat != null) {
-                nameStyle = groupFormat.getNameStyle();
-                groupPrefixRef = groupFormat.getPrefix();
-            }
+        if (config.isUrlHover()) {
+            style.hoverEvent(HoverEvent.showText(miniMessage.deserialize(config.getUrlHoverText())));
+        }
 
-            String formattedName = plugin.getConfigManager().getNameStyleTemplate(nameStyle).replace("%player_name%", displayName);
-            String groupPrefix = "";
+        return style.build();
+    }
 
-            if (!groupPrefixRef.isEmpty()) {
-                groupPrefix = plugin.getConfigManager().getGroupPrefixTemplate(groupPrefixRef);
-                if (!groupPrefix.isEmpty()) {
-                    groupPrefix += " ";
-                }
-            }
+    /**
+     * Drops the cached sender format of a player, e.g. after a channel or group change
+     * @param uuid The player's UUID
+     */
+    public void invalidateSender(UUID uuid) {
+        senderFormats.remove(uuid);
+    }
 
-            if (!channelPrefixRef.isEmpty()) {
-                channelPrefix = plugin.getConfigManager().getChannelPrefixTemplate(channelPrefixRef);
-                if (!channelPrefix.isEmpty()) {
-                    channelPrefix += " ";
-                }
-            }
+    /**
+     * Drops every cached sender format
+     */
+    public void invalidateSenders() {
+        senderFormats.clear();
+    }
 
-            String hoverText = plugin.getConfigManager().getHoverTemplate(channel.getHover());
-            if (hoverText.isEmpty()) {
-                hoverText = plugin.getConfigManager().getHoverTemplate("player-info");
-            }
+    private ComponentTemplate compileGroupFormat(ConfigSnapshot config, PlaceholderReplacer customPlaceholders,
+                                                 Channel channel, GroupFormat groupFormat) {
+        String channelDisplayName = getChannelDisplayName(channel);
 
-            // Apply placeholders to hover text
-            hoverText = hoverText.replace("%player_name%", playerName);
-            hoverText = plugin.getPlaceholderManager().applyAllPlaceholders(player, hoverText);
+        // Important: First apply custom placeholders
+        String customFormat = customPlaceholders.replace(groupFormat.getFormat());
 
-            String chatFormat = plugin.getConfigManager().getChatFormat();
-            String messageFormat;
+        // Add the channel display name if it exists
+        if (!channelDisplayName.isEmpty()) {
+            customFormat = channelDisplayName + customFormat;
+        }
 
-            if (plugin.getConfigManager().isFormatHoverEnabled() && !hoverText.isEmpty()) {
-                String nameWithHover = "<hover:show_text:'" + hoverText + "'><click:suggest_command:/msg " + playerName + " >" + formattedName + "</click></hover>";
-                messageFormat = chatFormat
-                        .replace("%channel_prefix%", channelPrefix)
-                        .replace("%group_prefix%", groupPrefix)
-                        .replace("%name%", nameWithHover)
-                        .replace("%message%", "<message>");
-            } else {
-                messageFormat = chatFormat
-                        .replace("%channel_prefix%", channelPrefix)
-                        .replace("%group_prefix%", groupPrefix)
-                        .replace("%name%", formattedName)
-                        .replace("%message%", "<message>");
-            }
+        customFormat = GROUP_FORMAT_TOKENS.replace(customFormat, channelDisplayName.trim(), "<message>");
 
-            // Add the channel display name if it exists
-            if (!channelDisplayName.isEmpty()) {
-                messageFormat = channelDisplayName + messageFormat;
-            }
+        return compile(config, customFormat, "group " + groupFormat.getName() + " in channel " + channel.getName());
+    }
+
+    private ComponentTemplate compileTemplateFormat(ConfigSnapshot config, PlaceholderReplacer customPlaceholders,
+                                                    Channel channel, GroupFormat groupFormat) {
+        String channelDisplayName = getChannelDisplayName(channel);
 
-            // Process all custom placeholders in the final message format
-            messageFormat = plugin.getPlaceholderManager().applyAllPlaceholders(player, messageFormat);
+        String nameStyle = "default";
+        String groupPrefixRef = "";
+        if (groupFormat != null) {
+            nameStyle = groupFormat.getNameStyle();
+            groupPrefixRef = groupFormat.getPrefix();
+        }
 
-            // Replace %channel_name% after applying custom placeholders
-            messageFormat = messageFormat.replace("%channel_name%", channelDisplayName.trim());
+        // Name styles show the display name, the hover and click use the account name
+        String formattedName = PLAYER_NAME_TOKEN.replace(config.getNameStyleTemplate(nameStyle), "%display_name%");
 
-            try {
-                return miniMessage.deserialize(messageFormat, TagResolver.builder()
-                        .resolver(Placeholder.component("message", messageComponent))
-                        .build());
-            } catch (Exception e) {
-                plugin.getLogger().warning("Error formatting message: " + e.getMessage());
-                return Component.text("Error in formatting: " + PlainTextComponentSerializer.plainText().serialize(messageComponent));
+        String groupPrefix = "";
+        if (!groupPrefixRef.isEmpty()) {
+            groupPrefix = config.getGroupPrefixTemplate(groupPrefixRef);
+            if (!groupPrefix.isEmpty()) {
+                groupPrefix += " ";
             }
         }
 
-        // Fallback to original implementation
-        String formattedName = plugin.getConfigManager().getNameStyleTemplate("default").replace("%player_name%", displayName);
-
+        String channelPrefix = "";
+        String channelPrefixRef = channel.getPrefix();
         if (!channelPrefixRef.isEmpty()) {
-            channelPrefix = plugin.getConfigManager().getChannelPrefixTemplate(channelPrefixRef);
+            channelPrefix = config.getChannelPrefixTemplate(channelPrefixRef);
             if (!channelPrefix.isEmpty()) {
                 channelPrefix += " ";
             }
         }
 
-        String hoverText = plugin.getConfigManager().getHoverTemplate(channel.getHover());
+        String hoverText = config.getHoverTemplate(channel.getHover());
         if (hoverText.isEmpty()) {
-            hoverText = plugin.getConfigManager().getHoverTemplate("player-info");
+            hoverText = config.getHoverTemplate("player-info");
         }
+        hoverText = customPlaceholders.replace(hoverText);
 
-        // Apply placeholders to hover text
-        hoverText = hoverText.replace("%player_name%", playerName);
-        hoverText = plugin.getPlaceholderManager().applyAllPlaceholders(player, hoverText);
-
-        String chatFormat = plugin.getConfigManager().getChatFormat();
-        String messageFormat;
-
-        if (plugin.getConfigManager().isFormatHoverEnabled() && !hoverText.isEmpty()) {
-            String nameWithHover = "<hover:show_text:'" + hoverText + "'><click:suggest_command:/msg " + playerName + " >" + formattedName + "</click></hover>";
-            messageFormat = chatFormat
-                    .replace("%channel_prefix%", channelPrefix)
-                    .replace("%group_prefix%", "")
-                    .replace("%name%", nameWithHover)
-                    .replace("%message%", "<message>");
-        } else {
-            messageFormat = chatFormat
-                    .replace("%channel_prefix%", channelPrefix)
-                    .replace("%group_prefix%", "")
-                    .replace("%name%", formattedName)
-                    .replace("%message%", "<message>");
+        String name = formattedName;
+        if (config.isFormatHoverEnabled() && !hoverText.isEmpty()) {
+            name = "<hover:show_text:'" + hoverText + "'><click:suggest_command:/msg %player_name% >" + formattedName + "</click></hover>";
         }
 
+        String messageFormat = CHAT_FORMAT_TOKENS.replace(config.getChatFormat(),
+                channelPrefix, groupPrefix, name, "<message>");
+
         // Add the channel display name if it exists
         if (!channelDisplayName.isEmpty()) {
             messageFormat = channelDisplayName + messageFormat;
         }
 
         // Process all custom placeholders in the final message format
-        messageFormat = plugin.getPlaceholderManager().applyAllPlaceholders(player, messageFormat);
+        messageFormat = customPlaceholders.replace(messageFormat);
 
         // Replace %channel_name% after applying custom placeholders
-        messageFormat = messageFormat.replace("%channel_name%", channelDisplayName.trim());
+        messageFormat = CHANNEL_NAME_TOKEN.replace(messageFormat, channelDisplayName.trim());
+
+        String description = (groupFormat != null ? "name style " + nameStyle : "default format")
+                + " in channel " + channel.getName();
+        return compile(config, messageFormat, description);
+    }
+
+    private ComponentTemplate compile(ConfigSnapshot config, String format, String description) {
+        ComponentTemplate template = ComponentTemplate.compile(templateMiniMessage, format, STRING_SLOTS,
+                COMPONENT_SLOTS, this::requiresPlaceholderApi);
+
+        // Logged against the config being compiled, which is not published yet
+        if (config.isDebugFormatProcessing()) {
+            plugin.getLogger().info("[DEBUG] Compiled " + description + (template.isPrecompiled() ? "" : " (parsed per message)")
+                    + ": " + format);
+        }
+        return template;
+    }
+
+    private boolean requiresPlaceholderApi(String format) {
+        return plugin.getServer().getPluginManager().getPlugin("PlaceholderAPI") != null
+                && PlaceholderAPI.containsPlaceholders(format);
+    }
+
+    private String getChannelDisplayName(Channel channel) {
+        if (channel != null && channel.hasDisplayName()) {
+            return channel.getDisplayName() + " ";
+        }
+        return "";
+    }
+
+    private ComponentTemplate getTemplate(LoadedConfig loaded, Channel channel, GroupFormat groupFormat) {
+        Map<String, ComponentTemplate> channelTemplates = loaded.formats().templates.get(channel.getName());
+        if (channelTemplates == null) {
+            // Channel that was not compiled, compile it without caching
+            return groupFormat == null || groupFormat.getFormat().isEmpty()
+                    ? compileTemplateFormat(loaded.snapshot(), loaded.customPlaceholders(), channel, groupFormat)
+                    : compileGroupFormat(loaded.snapshot(), loaded.customPlaceholders(), channel, groupFormat);
+        }
+
+        ComponentTemplate template = groupFormat != null ? channelTemplates.get(groupFormat.getName()) : null;
+        return template != null ? template : channelTemplates.get(NO_GROUP);
+    }
+
+    /**
+     * Gets the template with the sender's prefix, name, hover and click already rendered.
+     * Templates are unique per channel and group, so the entry stays valid while the
+     * player keeps the same template and display name.
+     */
+    private ComponentTemplate getSenderTemplate(UUID uuid, ComponentTemplate template, String[] names) {
+        SenderFormat cached = senderFormats.get(uuid);
+        if (cached != null && cached.template() == template && cached.displayName().equals(names[1])) {
+            return cached.bound();
+        }
+
+        ComponentTemplate bound = template.bind(names);
+        if (bound == null) {
+            // Depends on PlaceholderAPI values, which can change between messages
+            senderFormats.remove(uuid);
+            return null;
+        }
+
+        senderFormats.put(uuid, new SenderFormat(template, names[1], bound));
+        return bound;
+    }
+
+    public Component formatChatMessage(Player player, String channelName, String message) {
+        // Read once, so a concurrent reload cannot mix the old and the new config below
+        LoadedConfig loaded = plugin.getConfigManager().getLoaded();
+        ConfigSnapshot config = loaded.snapshot();
+        String playerName = player.getName();
+        Component messageComponent = formatMessageContent(player, message, loaded);
+
+        // Debug settings
+        boolean debugFormatProcessing = config.isDebugFormatProcessing();
+        boolean debugGroupSelection = config.isDebugGroupSelection();
+
+        // Get the channel
+        Channel channel = config.getChannel(channelName);
+        if (channel == null) {
+            channel = config.getDefaultChannel();
+        }
+
+        // If using group formats with LuckPerms
+        GroupFormat groupFormat = null;
+        if (config.isUseGroupFormat() && plugin.getPermissionService().isLuckPermsHooked()) {
+            groupFormat = plugin.getPermissionService().getHighestGroupFormat(player, config);
+
+            // Debug info for group selection
+            if (debugGroupSelection) {
+                if (groupFormat != null) {
+                    plugin.debugLog("Using group format for player " + playerName + ": " + groupFormat.getName());
+                    plugin.debugLog("Format string: " + groupFormat.getFormat());
+                } else {
+                    plugin.debugLog("No group format found for player " + playerName);
+                }
+            }
+        }
+
+        ComponentTemplate template = getTemplate(loaded, channel, groupFormat);
+        String[] names = {playerName, player.getDisplayName()};
 
         try {
-            return miniMessage.deserialize(messageFormat, TagResolver.builder()
-                    .resolver(Placeholder.component("message", messageComponent))
-                    .build());
+            ComponentTemplate senderTemplate = getSenderTemplate(player.getUniqueId(), template, names);
+            if (senderTemplate != null) {
+                return senderTemplate.render(null, new Component[]{messageComponent}, null);
+            }
+
+            UnaryOperator<String> papi = format -> plugin.getPlaceholderCache().setPlaceholders(player, format);
+            return template.render(names, new Component[]{messageComponent}, papi);
         } catch (Exception e) {
             plugin.getLogger().warning("Error formatting message: " + e.getMessage());
+            if (debugFormatProcessing) {
+                plugin.getLogger().warning("Failed format: " + template.getSource());
+            }
             return Component.text("Error in formatting: " + PlainTextComponentSerializer.plainText().serialize(messageComponent));
         }
     }
 
-    private Component formatMessageContent(Player player, String message) {
-        // Symbol replacement using regex (case-insensitive, dashes/numbers allowed)
-        Map<String, String> symbols = plugin.getConfigManager().getSymbolMappings();
-        if (symbols != null && !symbols.isEmpty()) {
-            Matcher matcher = SYMBOL_PATTERN.matcher(message);
-            StringBuffer sb = new StringBuffer();
-            while (matcher.find()) {
-                String code = matcher.group();
-                String codeKey = code.toLowerCase();
-                String replacement = symbols.get(codeKey);
+    /**
+     * Builds the message body in a single pass over the text: symbol codes are replaced and
+     * URLs become clickable. The text between URLs is only parsed by MiniMessage when the
+     * player may use formatting and it actually contains tags.
+     */
+    private Component formatMessageContent(Player player, String message, LoadedConfig loaded) {
+        boolean allowFormatting = loaded.snapshot().isPlayerFormattingAllowed()
+                || player.hasPermission("remmychat.format.color");
+        boolean linkClick = loaded.snapshot().isUrlFormattingEnabled();
+        SymbolTable symbolTable = loaded.formats().symbols;
+        String[] keys = symbolTable.keys();
+        String[] values = symbolTable.values();
+
+        StringBuilder text = new StringBuilder(message.length() + 16);
+        TextComponent.Builder builder = null;
+        int length = message.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = message.charAt(i);
+
+            if (c == ':' && keys.length > 0) {
+                int end = matchSymbol(message, i);
+                String replacement = end > 0 ? lookupSymbol(keys, values, message, i, end) : null;
                 if (replacement != null) {
-                    matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
-                } else {
-                    matcher.appendReplacement(sb, Matcher.quoteReplacement(code));
+                    text.append(replacement);
+                    i = end;
+                    continue;
+                }
+            } else if (c == 'h' && linkClick) {
+                int end = matchUrl(message, i);
+                if (end > 0) {
+                    if (builder == null) {
+                        builder = Component.text();
+                    }
+                    if (text.length() > 0) {
+                        builder.append(formatText(text.toString(), allowFormatting));
+                        text.setLength(0);
+                    }
+                    builder.append(formatUrl(message.substring(i, end), loaded.formats().urlStyle));
+                    i = end;
+                    continue;
                 }
             }
-            matcher.appendTail(sb);
-            message = sb.toString();
-        }
 
-        List<String> urls = new ArrayList<>();
-        List<Integer> startPositions = new ArrayList<>();
-        List<Integer> endPositions = new ArrayList<>();
+            text.append(c);
+            i++;
+        }
 
-        Matcher matcher = urlPattern.matcher(message);
-        while (matcher.find()) {
-            urls.add(matcher.group());
-            startPositions.add(matcher.start());
-            endPositions.add(matcher.end());
+        if (builder == null) {
+            return formatText(text.toString(), allowFormatting);
+        }
+        if (text.length() > 0) {
+            builder.append(formatText(text.toString(), allowFormatting));
         }
+        return builder.build();
+    }
 
-        if (urls.isEmpty() || !plugin.getConfigManager().isLinkClickEnabled()) {
-            return formatPlainMessage(message, player);
+    /**
+     * Turns a run of message text into a component. Text the player may not format, and text
+     * without tags or escapes, is taken literally without going through MiniMessage.
+     */
+    private Component formatText(String text, boolean allowFormatting) {
+        if (!allowFormatting || (text.indexOf('<') < 0 && text.indexOf('\\') < 0)) {
+            return Component.text(text);
         }
+        return miniMessage.deserialize(text);
+    }
 
-        TextComponent.Builder builder = Component.text();
-        int lastEnd = 0;
+    /**
+     * Matches a symbol code such as :heart: (letters, digits, '_' and '-')
+     * @return The index after the closing colon, or -1 if there is no code at this position
+     */
+    private static int matchSymbol(String text, int start) {
+        int i = start + 1;
+        while (i < text.length() && isSymbolChar(text.charAt(i))) {
+            i++;
+        }
+        if (i == start + 1 || i >= text.length() || text.charAt(i) != ':') {
+            return -1;
+        }
+        return i + 1;
+    }
 
-        for (int i = 0; i < urls.size(); i++) {
-            if (startPositions.get(i) > lastEnd) {
-                String beforeUrl = message.substring(lastEnd, startPositions.get(i));
-                builder.append(formatPlainMessage(beforeUrl, player));
+    private static String lookupSymbol(String[] keys, String[] values, String text, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].length() == length && text.regionMatches(true, start, keys[i], 0, length)) {
+                return values[i];
             }
+        }
+        return null;
+    }
 
-            String url = urls.get(i);
-            Component urlComponent = formatUrl(url);
-            builder.append(urlComponent);
+    /**
+     * Matches an http(s) URL with a dotted host, ending on a character a URL may end with
+     * @return The index after the URL, or -1 if there is no URL at this position
+     */
+    private static int matchUrl(String text, int start) {
+        int i;
+        if (text.startsWith("https://", start)) {
+            i = start + 8;
+        } else if (text.startsWith("http://", start)) {
+            i = start + 7;
+        } else {
+            return -1;
+        }
 
-            lastEnd = endPositions.get(i);
+        int hostStart = i;
+        int length = text.length();
+        while (i < length && isHostChar(text.charAt(i))) {
+            i++;
+        }
+        if (i == hostStart || i + 1 >= length || text.charAt(i) != '.' || !isHostChar(text.charAt(i + 1))) {
+            return -1;
         }
 
-        if (lastEnd < message.length()) {
-            String afterUrls = message.substring(lastEnd);
-            builder.append(formatPlainMessage(afterUrls, player));
+        int end = -1;
+        for (i = hostStart; i < length && isUrlChar(text.charAt(i)); i++) {
+            if (isUrlEndChar(text.charAt(i))) {
+                end = i + 1;
+            }
         }
+        return end;
+    }
 
-        return builder.build();
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
     }
 
-    private Component formatUrl(String url) {
-        String colorHex = plugin.getConfig().getString("url-formatting.color", "#3498DB");
+    private static boolean isSymbolChar(char c) {
+        return isWordChar(c) || c == '-';
+    }
 
-        TextComponent.Builder urlBuilder = Component.text()
-                .content(url)
-                .clickEvent(ClickEvent.openUrl(url));
-        if (!colorHex.isEmpty()) {
-            try {
-                urlBuilder.color(net.kyori.adventure.text.format.TextColor.fromHexString(colorHex));
-            } catch (Exception e) {
-                plugin.getLogger().warning("Invalid color in URL format: " + colorHex);
-            }
-        }
+    private static boolean isHostChar(char c) {
+        return isWordChar(c) || c == '-';
+    }
 
-        if (plugin.getConfig().getBoolean("url-formatting.underline", true)) {
-            urlBuilder.decoration(TextDecoration.UNDERLINED, true);
-        }
+    private static boolean isUrlChar(char c) {
+        return isUrlEndChar(c) || c == '.' || c == ',' || c == ':';
+    }
+
+    private static boolean isUrlEndChar(char c) {
+        return isWordChar(c) || switch (c) {
+            case '@', '?', '^', '=', '%', '&', '/', '~', '+', '#', '-' -> true;
+            default -> false;
+        };
+    }
+
+    private static Component formatUrl(String url, Style urlStyle) {
+        return Component.text(url, urlStyle.clickEvent(ClickEvent.openUrl(url)));
+    }
+
+    /**
+     * Renders the lines of a private message. The body is built once, under the same rules
+     * as chat messages, and shared by all lines, so it is never parsed as part of a format.
+     * @param sender The sending player
+     * @param receiver The receiving player
+     * @param message The text the sender typed
+     * @return The rendered lines
+     */
+    public PrivateMessage formatPrivateMessage(Player sender, Player receiver, String message) {
+        LoadedConfig loaded = plugin.getConfigManager().getLoaded();
+        PrivateMessageTemplates current = loaded.formats().privateMessageTemplates;
+        Component[] body = {formatMessageContent(sender, message, loaded)};
+        return new PrivateMessage(
+                renderMessageTemplate(current.toSender(), new String[]{receiver.getName()}, body),
+                renderMessageTemplate(current.toReceiver(), new String[]{sender.getName()}, body),
+                renderMessageTemplate(current.toSpies(), new String[]{sender.getName(), receiver.getName()}, body));
+    }
 
-        if (plugin.getConfig().getBoolean("url-formatting.hover", true)) {
-            String hoverText = plugin.getConfig().getString("url-formatting.hover-text", "<#AAAAAA>Click to open");
-            Component hoverComponent = miniMessage.deserialize(hoverText);
-            urlBuilder.hoverEvent(HoverEvent.showText(hoverComponent));
+    private Component renderMessageTemplate(ComponentTemplate template, String[] names, Component[] body) {
+        if (template == null) {
+            return null;
+        }
+        try {
+            return template.render(names, body, null);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error formatting system message: " + e.getMessage());
+            return Component.text("Error in formatting system message");
         }
+    }
 
-        return urlBuilder.build();
+    /**
+     * Gets a message from messages.yml
+     * @param path The message path
+     * @return The message, or null if it is configured empty
+     */
+    public Component formatSystemMessage(String path) {
+        LoadedConfig loaded = plugin.getConfigManager().getLoaded();
+        SystemMessage entry = loaded.formats().systemMessages.get(path);
+        return entry != null ? entry.unfilled() : parseSystemMessage(loaded.messages(), path);
     }
 
-    private Component formatPlainMessage(String text, Player player) {
-        if (!plugin.getConfigManager().isPlayerFormattingAllowed() &&
-                !(player.hasPermission("remmychat.format.color"))) {
-            text = escapeMinimessage(text);
+    /**
+     * Gets a message from messages.yml, filling its placeholders with literal text
+     * @param path The message path
+     * @param placeholders Alternating placeholder names and values, e.g. "player", name
+     * @return The message, or null if it is configured empty
+     */
+    public Component formatSystemMessage(String path, String... placeholders) {
+        LoadedConfig loaded = plugin.getConfigManager().getLoaded();
+        SystemMessage entry = loaded.formats().systemMessages.get(path);
+        if (entry == null) {
+            return parseSystemMessage(loaded.messages(), path);
+        }
+        if (entry.template() == null || placeholders.length == 0) {
+            return entry.unfilled();
         }
 
-        return miniMessage.deserialize(text);
+        String[] values = entry.tokens().clone();
+        boolean escape = !entry.template().isPrecompiled();
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            for (int slot = 0; slot < entry.names().length; slot++) {
+                if (entry.names()[slot].equals(placeholders[i])) {
+                    // A template that is parsed per render would otherwise read tags out of the value
+                    values[slot] = escape ? miniMessage.escapeTags(placeholders[i + 1]) : placeholders[i + 1];
+                }
+            }
+        }
+
+        try {
+            return entry.template().render(values, null, null);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error formatting system message: " + e.getMessage());
+            return Component.text("Error in formatting system message");
+        }
     }
 
-    public Component formatSystemMessage(String path, TagResolver... placeholders) {
-        String message = plugin.getMessages().getMessage(path);
+    private Component parseSystemMessage(FileConfiguration messages, String path) {
+        // Not in the catalog, so a path that does not exist
+        String message = Messages.getMessage(messages, path);
 
         // Skip empty messages completely by returning null
         if (message == null || message.trim().isEmpty()) {
@@ -362,15 +658,64 @@ public class FormatService {
         }
 
         try {
-            return miniMessage.deserialize(message, TagResolver.resolver(placeholders));
+            return miniMessage.deserialize(message);
         } catch (Exception e) {
             plugin.getLogger().warning("Error formatting system message: " + e.getMessage());
             return Component.text("Error in formatting system message");
         }
     }
 
-    private String escapeMinimessage(String input) {
-        return input.replace("<", "\\<").replace(">", "\\>");
+    private record SenderFormat(ComponentTemplate template, String displayName, ComponentTemplate bound) {
+    }
+
+    private record SymbolTable(String[] keys, String[] values) {
+    }
+
+    /**
+     * A compiled entry of messages.yml
+     * @param unfilled The message with every placeholder shown as written, null if the message is empty
+     * @param template The compiled message, null if it has no placeholders
+     * @param names The placeholder names, in slot order
+     * @param tokens The placeholders as written, in slot order
+     */
+    private record SystemMessage(Component unfilled, ComponentTemplate template, String[] names, String[] tokens) {
+
+        private static final SystemMessage EMPTY = new SystemMessage(null, null, new String[0], new String[0]);
+    }
+
+    private record PrivateMessageTemplates(ComponentTemplate toSender, ComponentTemplate toReceiver,
+                                           ComponentTemplate toSpies) {
+    }
+
+    /**
+     * Everything compiled from one load of the configuration and messages.yml
+     */
+    public static final class Formats {
+
+        private final Map<String, Map<String, ComponentTemplate>> templates;
+        private final SymbolTable symbols;
+        private final Style urlStyle;
+        private final PrivateMessageTemplates privateMessageTemplates;
+        private final Map<String, SystemMessage> systemMessages;
+        private final List<String> parsedSources;
+
+        private Formats(Map<String, Map<String, ComponentTemplate>> templates, SymbolTable symbols, Style urlStyle,
+                        PrivateMessageTemplates privateMessageTemplates, Map<String, SystemMessage> systemMessages,
+                        List<String> parsedSources) {
+            this.templates = templates;
+            this.symbols = symbols;
+            this.urlStyle = urlStyle;
+            this.privateMessageTemplates = privateMessageTemplates;
+            this.systemMessages = systemMessages;
+            this.parsedSources = parsedSources;
+        }
+
+        /**
+         * @return The sources of the chat formats that are parsed per message, because they use PlaceholderAPI
+         */
+        public List<String> getParsedSources() {
+            return parsedSources;
+        }
     }
 }
 
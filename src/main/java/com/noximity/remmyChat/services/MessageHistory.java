@@ -0,0 +1,220 @@
+package com.noximity.remmyChat.services;
+
+import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.config.ConfigSnapshot;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the last chat messages each player received, so a deleted message can be
+ * taken off their screen by redrawing their chat without it.
+ * <p>
+ * Every message gets a compact int id. A player's history is a fixed-size ring of ids and
+ * the components they were shown; recipients of the same message share one component, so
+ * the memory used is bounded by online players times message-history.size references.
+ * Nothing is written to the database.
+ * <p>
+ * Only channel chat is recorded, so a redraw also wipes private messages, system notices
+ * and other plugins' output from the screen; config.yml says so next to message-history.
+ */
+public class MessageHistory {
+
+    public static final String DELETE_PERMISSION = "remmychat.delete";
+    // The client keeps this many lines, a redraw pushes everything older out of view
+    private static final int CHAT_LINES = 100;
+
+    private final RemmyChat plugin;
+    private final MiniMessage miniMessage = MiniMessage.miniMessage();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<UUID, Ring> histories = new ConcurrentHashMap<>();
+    private volatile DeleteButton deleteButton;
+
+    public MessageHistory(RemmyChat plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * @return Whether messages are recorded and can be deleted
+     */
+    public boolean isEnabled() {
+        return plugin.getConfigManager().getSnapshot().getMessageHistorySize() > 0;
+    }
+
+    /**
+     * @return A new message id
+     */
+    public int nextId() {
+        return nextId.incrementAndGet();
+    }
+
+    /**
+     * Puts the delete button in front of a message
+     * @param message The rendered message
+     * @param id The id of the message
+     * @return The message as staff see it
+     */
+    public Component withDeleteButton(Component message, int id) {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        DeleteButton button = deleteButton;
+        if (button == null || button.config() != config) {
+            Component rendered = miniMessage.deserialize(config.getDeleteButtonText())
+                    .hoverEvent(HoverEvent.showText(miniMessage.deserialize(config.getDeleteButtonHover())));
+            button = new DeleteButton(config, rendered);
+            deleteButton = button;
+        }
+        return Component.textOfChildren(
+                button.component().clickEvent(ClickEvent.runCommand("/remchat delete " + id)),
+                Component.space(),
+                message);
+    }
+
+    /**
+     * Records a message a player was shown
+     * @param recipient The player
+     * @param id The id of the message
+     * @param shown The component the player received
+     */
+    public void record(Player recipient, int id, Component shown) {
+        int size = plugin.getConfigManager().getSnapshot().getMessageHistorySize();
+        if (size <= 0) {
+            return;
+        }
+        histories.computeIfAbsent(recipient.getUniqueId(), uuid -> new Ring(size)).add(id, shown, size);
+    }
+
+    /**
+     * Removes a message from every history and redraws the chat of each player who had it.
+     * Must run on the main thread.
+     * @param id The id of the message
+     * @return Whether any player still had the message
+     */
+    public boolean delete(int id) {
+        boolean found = false;
+        for (Map.Entry<UUID, Ring> entry : histories.entrySet()) {
+            Component[] remaining = entry.getValue().removeAndSnapshot(id);
+            if (remaining == null) {
+                continue;
+            }
+            found = true;
+            Player viewer = plugin.getServer().getPlayer(entry.getKey());
+            if (viewer != null) {
+                viewer.sendMessage(redraw(remaining));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Forgets a player's history, e.g. when they quit
+     * @param uuid The player's UUID
+     */
+    public void remove(UUID uuid) {
+        histories.remove(uuid);
+    }
+
+    private static Component redraw(Component[] messages) {
+        // One component for the whole screen, so the redraw is a single packet
+        TextComponent.Builder builder = Component.text();
+        for (int i = messages.length; i < CHAT_LINES; i++) {
+            builder.append(Component.newline());
+        }
+        for (int i = 0; i < messages.length; i++) {
+            if (i > 0) {
+                builder.append(Component.newline());
+            }
+            builder.append(messages[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The recent messages of one player, oldest first from head
+     */
+    private static final class Ring {
+
+        private int[] ids;
+        private Component[] messages;
+        private int head;
+        private int count;
+
+        private Ring(int capacity) {
+            this.ids = new int[capacity];
+            this.messages = new Component[capacity];
+        }
+
+        private synchronized void add(int id, Component message, int capacity) {
+            if (capacity != ids.length) {
+                resize(capacity);
+            }
+            int slot = (head + count) % ids.length;
+            ids[slot] = id;
+            messages[slot] = message;
+            if (count < ids.length) {
+                count++;
+            } else {
+                // Full, the oldest message is overwritten
+                head = (head + 1) % ids.length;
+            }
+        }
+
+        /**
+         * @return The remaining messages oldest first, or null if the id was not in the ring
+         */
+        private synchronized Component[] removeAndSnapshot(int id) {
+            int found = -1;
+            for (int i = 0; i < count; i++) {
+                if (ids[(head + i) % ids.length] == id) {
+                    found = i;
+                    break;
+                }
+            }
+            if (found < 0) {
+                return null;
+            }
+
+            // Close the gap by moving the newer messages back one slot
+            for (int i = found; i < count - 1; i++) {
+                int to = (head + i) % ids.length;
+                int from = (head + i + 1) % ids.length;
+                ids[to] = ids[from];
+                messages[to] = messages[from];
+            }
+            count--;
+            messages[(head + count) % ids.length] = null;
+
+            Component[] snapshot = new Component[count];
+            for (int i = 0; i < count; i++) {
+                snapshot[i] = messages[(head + i) % ids.length];
+            }
+            return snapshot;
+        }
+
+        private void resize(int capacity) {
+            // The configured size changed on reload, keep the newest messages that fit
+            int keep = Math.min(count, capacity);
+            int[] newIds = new int[capacity];
+            Component[] newMessages = new Component[capacity];
+            for (int i = 0; i < keep; i++) {
+                int from = (head + count - keep + i) % ids.length;
+                newIds[i] = ids[from];
+                newMessages[i] = messages[from];
+            }
+            ids = newIds;
+            messages = newMessages;
+            head = 0;
+            count = keep;
+        }
+    }
+
+    private record DeleteButton(ConfigSnapshot config, Component component) {
+    }
+}
@@ -1,14 +1,26 @@
 package com.noximity.remmyChat.services;
 
 import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.config.ConfigSnapshot;
 import com.noximity.remmyChat.models.GroupFormat;
+import com.noximity.remmyChat.utils.PlayerCache;
 import org.bukkit.entity.Player;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.UUID;
+
 public class PermissionService {
 
     private final RemmyChat plugin;
-    private Object luckPermsApi;
+    // (UUID) -> Object, getUser bound to the LuckPerms user manager
+    private MethodHandle getUser;
+    // (Object) -> String, User.getPrimaryGroup
+    private MethodHandle getPrimaryGroup;
     private boolean luckPermsHooked = false;
+    private final PlayerCache<CachedFormat> formatCache = new PlayerCache<>();
+    private final PlayerCache<Boolean> deleteCache = new PlayerCache<>();
 
     public PermissionService(RemmyChat plugin) {
         this.plugin = plugin;
@@ -18,15 +30,30 @@ public class PermissionService {
     private void hookLuckPerms() {
         try {
             if (plugin.getServer().getPluginManager().isPluginEnabled("LuckPerms")) {
-                // Use reflection to access LuckPerms API to prevent class loading issues when LP is not present
+                // Use reflection to access LuckPerms API to prevent class loading issues when LP is not present.
+                // The lookups happen once here; the chat path only invokes the bound handles.
                 Class<?> lpProviderClass = Class.forName("net.luckperms.api.LuckPermsProvider");
-                luckPermsApi = lpProviderClass.getMethod("get").invoke(null);
+                Class<?> luckPermsClass = Class.forName("net.luckperms.api.LuckPerms");
+                Class<?> userManagerClass = Class.forName("net.luckperms.api.model.user.UserManager");
+                Class<?> userClass = Class.forName("net.luckperms.api.model.user.User");
+
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Object luckPermsApi = lookup.findStatic(lpProviderClass, "get", MethodType.methodType(luckPermsClass))
+                        .invoke();
+                Object userManager = lookup.findVirtual(luckPermsClass, "getUserManager",
+                        MethodType.methodType(userManagerClass)).invoke(luckPermsApi);
+
+                getUser = lookup.findVirtual(userManagerClass, "getUser", MethodType.methodType(userClass, UUID.class))
+                        .bindTo(userManager)
+                        .asType(MethodType.methodType(Object.class, UUID.class));
+                getPrimaryGroup = lookup.findVirtual(userClass, "getPrimaryGroup", MethodType.methodType(String.class))
+                        .asType(MethodType.methodType(String.class, Object.class));
                 luckPermsHooked = true;
                 plugin.getLogger().info("LuckPerms found and hooked successfully!");
             } else {
                 plugin.getLogger().info("LuckPerms not found, group-based formatting will be disabled.");
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             plugin.getLogger().warning("Failed to hook into LuckPerms: " + e.getMessage());
             luckPermsHooked = false;
         }
@@ -45,46 +72,78 @@ public class PermissionService {
         if (!luckPermsHooked) return null;
 
         try {
-            // Get the User object using reflection
-            Object userManager = luckPermsApi.getClass().getMethod("getUserManager").invoke(luckPermsApi);
-            Object user = userManager.getClass().getMethod("getUser", java.util.UUID.class)
-                    .invoke(userManager, player.getUniqueId());
-
+            Object user = (Object) getUser.invokeExact(player.getUniqueId());
             if (user == null) return null;
 
-            // Get the primary group from the User object
-            return (String) user.getClass().getMethod("getPrimaryGroup").invoke(user);
-        } catch (Exception e) {
+            return (String) getPrimaryGroup.invokeExact(user);
+        } catch (Throwable e) {
             plugin.getLogger().warning("Error getting primary group for " + player.getName() + ": " + e.getMessage());
             return null;
         }
     }
 
     /**
-     * Finds the highest priority group format that the player has permission for
+     * Finds the highest priority group format that the player has permission for. The result
+     * is cached until the player's LuckPerms data changes, they quit, or the config is reloaded.
      * @param player The player to check
      * @return The group format or null if no matching format found
      */
     public GroupFormat getHighestGroupFormat(Player player) {
-        if (!luckPermsHooked || !plugin.getConfigManager().isUseGroupFormat()) {
+        return getHighestGroupFormat(player, plugin.getConfigManager().getSnapshot());
+    }
+
+    /**
+     * Finds the highest priority group format that the player has permission for in a specific config
+     * @param player The player to check
+     * @param config The config the format has to come from
+     * @return The group format or null if no matching format found
+     */
+    public GroupFormat getHighestGroupFormat(Player player, ConfigSnapshot config) {
+        if (!luckPermsHooked || !config.isUseGroupFormat()) {
             return null;
         }
 
+        UUID uuid = player.getUniqueId();
+        CachedFormat cached = formatCache.get(uuid);
+        // An entry resolved against an older config is as good as missing
+        if (cached != null && cached.config() == config) {
+            return cached.format();
+        }
+
+        return formatCache.resolve(uuid, () -> new CachedFormat(config, resolveGroupFormat(player, config))).format();
+    }
+
+    /**
+     * Whether a player sees delete buttons in chat. Checked for every recipient of every
+     * message, so the result is cached like the group format.
+     * @param player The player to check
+     * @return Whether the player has the delete permission
+     */
+    public boolean canDeleteMessages(Player player) {
+        UUID uuid = player.getUniqueId();
+        Boolean cached = deleteCache.get(uuid);
+        if (cached != null) {
+            return cached;
+        }
+
+        return deleteCache.resolve(uuid, () -> player.hasPermission(MessageHistory.DELETE_PERMISSION));
+    }
+
+    private GroupFormat resolveGroupFormat(Player player, ConfigSnapshot config) {
         try {
-            // Get primary group using our method that handles reflection
             String primaryGroup = getPrimaryGroup(player);
             if (primaryGroup != null) {
-                GroupFormat primaryGroupFormat = plugin.getConfigManager().getGroupFormat(primaryGroup);
+                GroupFormat primaryGroupFormat = config.getGroupFormat(primaryGroup);
                 // If we have a format for the primary group, use that
                 if (primaryGroupFormat != null) {
                     return primaryGroupFormat;
                 }
             }
 
-            // Otherwise check all configured groups by permission
-            for (String groupName : plugin.getConfigManager().getGroupFormats().keySet()) {
-                if (player.hasPermission("group." + groupName)) {
-                    return plugin.getConfigManager().getGroupFormat(groupName);
+            // Otherwise the highest priority group the player inherits wins
+            for (GroupFormat groupFormat : config.getGroupsByPriority()) {
+                if (player.hasPermission(groupFormat.getPermission())) {
+                    return groupFormat;
                 }
             }
 
@@ -95,4 +154,33 @@ public class PermissionService {
             return null;
         }
     }
+
+    /**
+     * Forgets the cached group format and permissions of a player, e.g. after their groups changed
+     * @param uuid The player's UUID
+     */
+    public void invalidate(UUID uuid) {
+        formatCache.invalidate(uuid);
+        deleteCache.invalidate(uuid);
+    }
+
+    /**
+     * Drops everything kept for a player, e.g. when they quit
+     * @param uuid The player's UUID
+     */
+    public void remove(UUID uuid) {
+        formatCache.remove(uuid);
+        deleteCache.remove(uuid);
+    }
+
+    /**
+     * Forgets every cached group format and permission
+     */
+    public void clearCache() {
+        formatCache.clear();
+        deleteCache.clear();
+    }
+
+    private record CachedFormat(ConfigSnapshot config, GroupFormat format) {
+    }
 }
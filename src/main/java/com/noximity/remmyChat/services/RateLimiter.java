@@ -0,0 +1,250 @@
+package com.noximity.remmyChat.services;
+
+import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.config.ConfigSnapshot;
+import com.noximity.remmyChat.models.RateLimit;
+import com.noximity.remmyChat.utils.PlayerCache;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token-bucket chat rate limiter, safe to use from async chat threads.
+ * <p>
+ * Each bucket is a single long holding the time at which it will be full again (the
+ * generic cell rate algorithm), so a check is one read and one compare-and-set without
+ * allocating. When a channel bucket refuses a message, the base token taken just before
+ * is given back. Every player has a base bucket, sized by the default limit or their
+ * permission tier, plus one bucket per channel that has a limit of its own. A player's
+ * tier and bypass permission are looked up once and cached until their permissions
+ * change, they quit, or the configuration is reloaded.
+ */
+public class RateLimiter {
+
+    private static final String BYPASS_PERMISSION = "remmychat.ratelimit.bypass";
+    private static final int BYPASS = -2;
+    private static final int NO_TIER = -1;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final RemmyChat plugin;
+    private final Map<UUID, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private final PlayerCache<CachedTier> tiers = new PlayerCache<>();
+
+    public RateLimiter(RemmyChat plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Compiles the rate limits of a configuration. The result is published by ConfigManager
+     * together with the config it came from.
+     * @param config The configuration to read the limits from
+     * @return The compiled limits
+     */
+    public static Limits compileLimits(ConfigSnapshot config) {
+        return new Limits(config);
+    }
+
+    /**
+     * Forgets all buckets and cached tiers, called once reloaded limits are published
+     */
+    public void reload() {
+        buckets.clear();
+        tiers.clear();
+    }
+
+    /**
+     * Takes one message from the player's buckets if all of them allow it
+     * @param player The sending player
+     * @param channel The channel the message goes to
+     * @return 0 if the message may be sent, otherwise the milliseconds until it may
+     */
+    public long tryAcquire(Player player, String channel) {
+        Limits current = plugin.getConfigManager().getLoaded().rateLimits();
+        if (!current.enabled) {
+            return 0;
+        }
+
+        int tier = getTier(player, current);
+        if (tier == BYPASS) {
+            return 0;
+        }
+
+        int baseProfile = tier + 1;
+        int channelIndex = current.channelIndex(channel);
+        if (current.intervals[baseProfile] <= 0 && (channelIndex < 0 || current.channelIntervals[channelIndex] <= 0)) {
+            return 0;
+        }
+
+        AtomicLongArray playerBuckets = buckets.computeIfAbsent(player.getUniqueId(), uuid -> {
+            AtomicLongArray created = new AtomicLongArray(1 + current.channelIntervals.length);
+            for (int i = 0; i < created.length(); i++) {
+                created.set(i, EMPTY);
+            }
+            return created;
+        });
+        if (playerBuckets.length() != 1 + current.channelIntervals.length) {
+            // Created against limits that were replaced by a reload in the meantime
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        long baseInterval = current.intervals[baseProfile];
+        long wait = acquire(playerBuckets, 0, baseInterval, current.tolerances[baseProfile], now);
+        if (wait > 0) {
+            if (channelIndex >= 0) {
+                // Only to report the longer of the two waits, nothing is taken
+                wait = Math.max(wait, waitTime(playerBuckets, 1 + channelIndex,
+                        current.channelIntervals[channelIndex], current.channelTolerances[channelIndex], now));
+            }
+            return toMillis(wait);
+        }
+
+        if (channelIndex >= 0) {
+            wait = acquire(playerBuckets, 1 + channelIndex,
+                    current.channelIntervals[channelIndex], current.channelTolerances[channelIndex], now);
+            if (wait > 0) {
+                // Give back the base token, the message is not sent
+                if (baseInterval > 0) {
+                    playerBuckets.getAndAdd(0, -baseInterval);
+                }
+                return toMillis(wait);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets the cached tier of a player, e.g. after a permission change
+     * @param uuid The player's UUID
+     */
+    public void invalidate(UUID uuid) {
+        tiers.invalidate(uuid);
+    }
+
+    /**
+     * Drops everything kept for a player
+     * @param uuid The player's UUID
+     */
+    public void remove(UUID uuid) {
+        buckets.remove(uuid);
+        tiers.remove(uuid);
+    }
+
+    private int getTier(Player player, Limits current) {
+        CachedTier cached = tiers.get(player.getUniqueId());
+        // A tier resolved against replaced limits may point past the new tier list
+        if (cached != null && cached.limits() == current) {
+            return cached.tier();
+        }
+        return tiers.resolve(player.getUniqueId(), () -> new CachedTier(current, resolveTier(player, current))).tier();
+    }
+
+    private static int resolveTier(Player player, Limits current) {
+        int tier = NO_TIER;
+        if (player.hasPermission(BYPASS_PERMISSION)) {
+            tier = BYPASS;
+        } else {
+            for (int i = 0; i < current.tierPermissions.length; i++) {
+                if (player.hasPermission(current.tierPermissions[i])) {
+                    tier = i;
+                    break;
+                }
+            }
+        }
+        return tier;
+    }
+
+    private static long waitTime(AtomicLongArray playerBuckets, int slot, long interval, long tolerance, long now) {
+        if (interval <= 0) {
+            return 0;
+        }
+        long full = playerBuckets.get(slot);
+        long theoretical = full == EMPTY ? now : Math.max(full, now);
+        return theoretical - now - tolerance;
+    }
+
+    /**
+     * Takes one token from a bucket. The check and the update are one compare-and-set, so two
+     * threads can never both take the last token.
+     * @return 0 if the token was taken, otherwise the nanoseconds until one is available
+     */
+    private static long acquire(AtomicLongArray playerBuckets, int slot, long interval, long tolerance, long now) {
+        if (interval <= 0) {
+            return 0;
+        }
+        while (true) {
+            long full = playerBuckets.get(slot);
+            long theoretical = full == EMPTY ? now : Math.max(full, now);
+            long wait = theoretical - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (playerBuckets.compareAndSet(slot, full, theoretical + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    private static long toMillis(long waitNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    private record CachedTier(Limits limits, int tier) {
+    }
+
+    /**
+     * The configured limits as flat arrays. Profile 0 is the default, profile i + 1 is tier i.
+     */
+    public static final class Limits {
+
+        private final boolean enabled;
+        private final long[] intervals;
+        private final long[] tolerances;
+        private final String[] tierPermissions;
+        private final Map<String, Integer> channelIndexes = new HashMap<>();
+        private final long[] channelIntervals;
+        private final long[] channelTolerances;
+
+        private Limits(ConfigSnapshot config) {
+            this.enabled = config.isRateLimitEnabled();
+
+            List<RateLimit> tierList = config.getRateLimitTiers();
+            this.intervals = new long[1 + tierList.size()];
+            this.tolerances = new long[1 + tierList.size()];
+            this.tierPermissions = new String[tierList.size()];
+            setProfile(intervals, tolerances, 0, config.getDefaultRateLimit());
+            for (int i = 0; i < tierList.size(); i++) {
+                tierPermissions[i] = tierList.get(i).getPermission();
+                setProfile(intervals, tolerances, i + 1, tierList.get(i));
+            }
+
+            Map<String, RateLimit> channels = config.getChannelRateLimits();
+            this.channelIntervals = new long[channels.size()];
+            this.channelTolerances = new long[channels.size()];
+            int index = 0;
+            for (Map.Entry<String, RateLimit> entry : channels.entrySet()) {
+                channelIndexes.put(entry.getKey(), index);
+                setProfile(channelIntervals, channelTolerances, index, entry.getValue());
+                index++;
+            }
+        }
+
+        private static void setProfile(long[] intervals, long[] tolerances, int index, RateLimit limit) {
+            long interval = TimeUnit.MILLISECONDS.toNanos(limit.getRefillMillis());
+            intervals[index] = interval;
+            // A full bucket lets burst messages through before the next one has to wait
+            tolerances[index] = interval * (limit.getBurst() - 1);
+        }
+
+        private int channelIndex(String channel) {
+            Integer index = channelIndexes.get(channel);
+            return index != null ? index : -1;
+        }
+    }
+}
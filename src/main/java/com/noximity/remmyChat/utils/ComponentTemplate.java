@@ -0,0 +1,344 @@
+package com.noximity.remmyChat.utils;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A MiniMessage format compiled once into a component tree with typed slots.
+ * <p>
+ * String slots (player names and the like) are written into the source as private-use
+ * sentinel characters, so they survive MiniMessage parsing in text, hover text and click
+ * values. Component slots are inserted through a tag such as {@code <message>} and are
+ * swapped for the real component when rendering. Formats that cannot be held as a fixed
+ * tree (a slot inside a gradient, PlaceholderAPI placeholders, a parse error) keep their
+ * source and are parsed on every render instead.
+ */
+public final class ComponentTemplate {
+
+    private static final char COMPONENT_SLOT_BASE = '\uE000';
+    private static final char STRING_SLOT_BASE = '\uE100';
+    private static final int MAX_SLOTS = 0x100;
+    private static final String[] MODIFYING_TAGS = {"<gradient", "<rainbow", "<transition", "<pride"};
+
+    private final MiniMessage miniMessage;
+    private final String source;
+    private final String[] componentSlots;
+    private final boolean requiresSourcePass;
+    private final Node root;
+
+    private ComponentTemplate(MiniMessage miniMessage, String source, String[] componentSlots,
+                              boolean requiresSourcePass, Node root) {
+        this.miniMessage = miniMessage;
+        this.source = source;
+        this.componentSlots = componentSlots;
+        this.requiresSourcePass = requiresSourcePass;
+        this.root = root;
+    }
+
+    /**
+     * Compiles a format into a template
+     * @param miniMessage The parser to use; it should not compact its output
+     * @param source The MiniMessage format
+     * @param stringTokens Literal tokens in the source (e.g. %player_name%) that become string slots
+     * @param componentSlots Tag names in the source (e.g. message) that become component slots
+     * @param requiresSourcePass Tests the prepared source for content that must be resolved per render
+     * @return The compiled template
+     */
+    public static ComponentTemplate compile(MiniMessage miniMessage, String source, String[] stringTokens,
+                                            String[] componentSlots, Predicate<String> requiresSourcePass) {
+        if (stringTokens.length > MAX_SLOTS || componentSlots.length > MAX_SLOTS) {
+            throw new IllegalArgumentException("Too many template slots");
+        }
+
+        String prepared = source;
+        if (stringTokens.length > 0) {
+            String[] sentinels = new String[stringTokens.length];
+            for (int i = 0; i < sentinels.length; i++) {
+                sentinels[i] = String.valueOf((char) (STRING_SLOT_BASE + i));
+            }
+            prepared = PlaceholderReplacer.compile(stringTokens).replace(source, sentinels);
+        }
+
+        boolean sourcePass = requiresSourcePass != null && requiresSourcePass.test(prepared);
+        Node root = sourcePass ? null : buildTree(miniMessage, prepared, componentSlots);
+        return new ComponentTemplate(miniMessage, prepared, componentSlots, sourcePass, root);
+    }
+
+    /**
+     * @return Whether rendering only fills slots, without parsing
+     */
+    public boolean isPrecompiled() {
+        return root != null;
+    }
+
+    /**
+     * @return The prepared source, with string slots shown as sentinel characters
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Renders the template
+     * @param strings Values for the string slots, in token order
+     * @param components Values for the component slots, in slot order
+     * @param sourceFilter Applied to the filled source when the template has to be parsed, may be null
+     * @return The rendered component
+     */
+    public Component render(String[] strings, Component[] components, UnaryOperator<String> sourceFilter) {
+        if (root != null) {
+            return renderNode(root, strings, components);
+        }
+
+        String filled = fill(source, strings);
+        if (sourceFilter != null && requiresSourcePass) {
+            filled = sourceFilter.apply(filled);
+        }
+        return miniMessage.deserialize(filled, componentResolver(componentSlots, components));
+    }
+
+    /**
+     * Fills the string slots once, leaving only the component slots open
+     * @param strings Values for the string slots, in token order
+     * @return The bound template, or null if the template needs a source pass on every render
+     */
+    public ComponentTemplate bind(String[] strings) {
+        if (requiresSourcePass) {
+            return null;
+        }
+
+        String filled = fill(source, strings);
+        if (root == null) {
+            // With the strings in place a gradient no longer splits a slot, so this may now compile
+            return compile(miniMessage, filled, new String[0], componentSlots, null);
+        }
+
+        int[] counts = new int[2];
+        Node bound = Node.build(renderNode(root, strings, null), counts);
+        return new ComponentTemplate(miniMessage, filled, componentSlots, false, bound);
+    }
+
+    private static TagResolver componentResolver(String[] componentSlots, Component[] components) {
+        if (componentSlots.length == 0) {
+            return TagResolver.empty();
+        }
+        TagResolver.Builder builder = TagResolver.builder();
+        for (int i = 0; i < componentSlots.length; i++) {
+            Component value = components != null && i < components.length && components[i] != null
+                    ? components[i] : Component.empty();
+            builder.resolver(Placeholder.component(componentSlots[i], value));
+        }
+        return builder.build();
+    }
+
+    private static Node buildTree(MiniMessage miniMessage, String prepared, String[] componentSlots) {
+        if (containsStringSlot(prepared) && hasModifyingTag(prepared)) {
+            // Gradients and friends colour each character at parse time, so a slot filled later would lose it
+            return null;
+        }
+
+        Component[] markers = new Component[componentSlots.length];
+        for (int i = 0; i < markers.length; i++) {
+            markers[i] = Component.text(String.valueOf((char) (COMPONENT_SLOT_BASE + i)));
+        }
+
+        Component parsed;
+        try {
+            parsed = miniMessage.deserialize(prepared, componentResolver(componentSlots, markers));
+        } catch (Exception e) {
+            return null;
+        }
+
+        int[] counts = new int[2];
+        Node node = Node.build(parsed, counts);
+
+        int expectedMarkers = 0;
+        for (String slot : componentSlots) {
+            expectedMarkers += countOccurrences(prepared, "<" + slot + ">") + countOccurrences(prepared, "<" + slot + "/>");
+        }
+        if (counts[0] != expectedMarkers || counts[1] != countStringSlots(prepared)) {
+            // A slot ended up somewhere the tree cannot fill (e.g. a tag argument), parse per render instead
+            return null;
+        }
+        return node;
+    }
+
+    private static Component renderNode(Node node, String[] strings, Component[] components) {
+        if (node.marker >= 0) {
+            if (components == null) {
+                // Binding: keep the marker so the slot stays open
+                return node.component;
+            }
+            if (node.marker < components.length && components[node.marker] != null) {
+                return components[node.marker];
+            }
+            return Component.empty();
+        }
+        if (node.isStatic()) {
+            return node.component;
+        }
+
+        Component result = node.component;
+        if (node.content) {
+            TextComponent text = (TextComponent) result;
+            result = text.content(fill(text.content(), strings));
+        }
+        if (node.click) {
+            ClickEvent clickEvent = result.clickEvent();
+            result = result.clickEvent(ClickEvent.clickEvent(clickEvent.action(), fill(clickEvent.value(), strings)));
+        }
+        if (node.hover != null) {
+            result = result.hoverEvent(HoverEvent.showText(renderNode(node.hover, strings, components)));
+        }
+        if (node.children != null) {
+            List<Component> children = new ArrayList<>(node.children.length);
+            for (Node child : node.children) {
+                children.add(renderNode(child, strings, components));
+            }
+            result = result.children(children);
+        }
+        return result;
+    }
+
+    private static String fill(String text, String[] strings) {
+        int first = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (isStringSlot(text.charAt(i))) {
+                first = i;
+                break;
+            }
+        }
+        if (first < 0) {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        builder.append(text, 0, first);
+        for (int i = first; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isStringSlot(c)) {
+                int index = c - STRING_SLOT_BASE;
+                if (strings != null && index < strings.length && strings[index] != null) {
+                    builder.append(strings[index]);
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isStringSlot(char c) {
+        return c >= STRING_SLOT_BASE && c < STRING_SLOT_BASE + MAX_SLOTS;
+    }
+
+    private static boolean isComponentSlot(char c) {
+        return c >= COMPONENT_SLOT_BASE && c < COMPONENT_SLOT_BASE + MAX_SLOTS;
+    }
+
+    private static boolean containsStringSlot(String text) {
+        return countStringSlots(text) > 0;
+    }
+
+    private static int countStringSlots(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isStringSlot(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasModifyingTag(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (String tag : MODIFYING_TAGS) {
+            if (lower.contains(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int countOccurrences(String text, String token) {
+        int count = 0;
+        int index = text.indexOf(token);
+        while (index >= 0) {
+            count++;
+            index = text.indexOf(token, index + token.length());
+        }
+        return count;
+    }
+
+    /**
+     * One component of the compiled tree. Static subtrees are returned as-is when rendering.
+     */
+    private static final class Node {
+
+        private final Component component;
+        private final int marker;
+        private final boolean content;
+        private final boolean click;
+        private final Node hover;
+        private final Node[] children;
+
+        private Node(Component component, int marker, boolean content, boolean click, Node hover, Node[] children) {
+            this.component = component;
+            this.marker = marker;
+            this.content = content;
+            this.click = click;
+            this.hover = hover;
+            this.children = children;
+        }
+
+        private boolean isStatic() {
+            return marker < 0 && !content && !click && hover == null && children == null;
+        }
+
+        private static Node build(Component component, int[] counts) {
+            if (component instanceof TextComponent text && text.children().isEmpty() && text.style().isEmpty()
+                    && text.content().length() == 1 && isComponentSlot(text.content().charAt(0))) {
+                counts[0]++;
+                return new Node(component, text.content().charAt(0) - COMPONENT_SLOT_BASE, false, false, null, null);
+            }
+
+            int contentSlots = component instanceof TextComponent text ? countStringSlots(text.content()) : 0;
+            ClickEvent clickEvent = component.clickEvent();
+            int clickSlots = clickEvent != null ? countStringSlots(clickEvent.value()) : 0;
+            counts[1] += contentSlots + clickSlots;
+
+            Node hover = null;
+            HoverEvent<?> hoverEvent = component.hoverEvent();
+            if (hoverEvent != null && hoverEvent.action() == HoverEvent.Action.SHOW_TEXT) {
+                Node hoverNode = build((Component) hoverEvent.value(), counts);
+                if (!hoverNode.isStatic()) {
+                    hover = hoverNode;
+                }
+            }
+
+            List<Component> componentChildren = component.children();
+            Node[] children = new Node[componentChildren.size()];
+            boolean dynamicChildren = false;
+            for (int i = 0; i < children.length; i++) {
+                children[i] = build(componentChildren.get(i), counts);
+                dynamicChildren |= !children[i].isStatic();
+            }
+
+            return new Node(component, -1, contentSlots > 0, clickSlots > 0, hover, dynamicChildren ? children : null);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.noximity.remmyChat.utils;
+
+import com.noximity.remmyChat.RemmyChat;
+import com.noximity.remmyChat.config.ConfigSnapshot;
+import com.noximity.remmyChat.config.LoadedConfig;
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches PlaceholderAPI results per player and placeholder, so slow expansions are not
+ * called for every chat message. Each placeholder is reused for its configured TTL. With
+ * the refresher enabled, the placeholders used by the chat formats are resolved for
+ * online players in the background and chat only reads cached values.
+ */
+public class PlaceholderCache {
+
+    private final RemmyChat plugin;
+    private final Map<UUID, Map<String, CachedValue>> values = new ConcurrentHashMap<>();
+    private BukkitTask refreshTask;
+
+    public PlaceholderCache(RemmyChat plugin) {
+        this.plugin = plugin;
+        startRefresher();
+    }
+
+    /**
+     * Applies PlaceholderAPI placeholders to a string, reusing cached values where they are still valid
+     * @param player The player context
+     * @param text The text to process
+     * @return The text with placeholders replaced
+     */
+    public String setPlaceholders(Player player, String text) {
+        if (text == null || player == null || !isPlaceholderApiEnabled()) {
+            return text;
+        }
+
+        // The TTLs and the refreshed placeholders have to come from the same load
+        LoadedConfig loaded = plugin.getConfigManager().getLoaded();
+        ConfigSnapshot config = loaded.snapshot();
+        if (!config.isPlaceholderCacheEnabled()) {
+            return PlaceholderAPI.setPlaceholders(player, text);
+        }
+
+        int start = nextPlaceholder(text, 0);
+        if (start < 0) {
+            return text;
+        }
+
+        Map<String, CachedValue> playerValues = getValues(player);
+        Set<String> refreshed = config.isPlaceholderRefreshEnabled() ? loaded.refreshedPlaceholders() : Set.of();
+        long now = System.currentTimeMillis();
+
+        StringBuilder result = new StringBuilder(text.length() + 32);
+        int copied = 0;
+        while (start >= 0) {
+            int end = text.indexOf('%', start + 1);
+            String placeholder = text.substring(start, end + 1);
+            result.append(text, copied, start).append(resolve(player, placeholder, playerValues, config, refreshed, now));
+            copied = end + 1;
+            start = nextPlaceholder(text, copied);
+        }
+        result.append(text, copied, text.length());
+        return result.toString();
+    }
+
+    private String resolve(Player player, String placeholder, Map<String, CachedValue> playerValues,
+                           ConfigSnapshot config, Set<String> refreshed, long now) {
+        CachedValue cached = playerValues.get(placeholder);
+        // A stale value is still served while the refresher is running, it is replaced on its next run
+        if (cached != null && (cached.expiresAt() > now || refreshed.contains(placeholder))) {
+            return cached.value();
+        }
+
+        long ttl = config.getPlaceholderTtl(placeholder.substring(1, placeholder.length() - 1));
+        String value = PlaceholderAPI.setPlaceholders(player, placeholder);
+        if (ttl > 0) {
+            playerValues.put(placeholder, new CachedValue(value, now + ttl));
+        }
+        return value;
+    }
+
+    private Map<String, CachedValue> getValues(Player player) {
+        if (!player.isOnline()) {
+            // A message still in flight after quit must not bring the entry back
+            Map<String, CachedValue> playerValues = values.get(player.getUniqueId());
+            return playerValues != null ? playerValues : new ConcurrentHashMap<>();
+        }
+        return values.computeIfAbsent(player.getUniqueId(), uuid -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Finds the next %identifier% in the text. Identifiers contain no spaces, like PlaceholderAPI's own.
+     * @return The index of the opening percent sign, or -1 if there is none
+     */
+    private static int nextPlaceholder(String text, int from) {
+        int start = text.indexOf('%', from);
+        while (start >= 0) {
+            int end = start + 1;
+            while (end < text.length() && text.charAt(end) != '%' && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            if (end >= text.length()) {
+                return -1;
+            }
+            if (text.charAt(end) == '%' && end > start + 1) {
+                return start;
+            }
+            start = text.charAt(end) == '%' ? end : text.indexOf('%', end);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the placeholders the refresher keeps warm, usually in the compiled chat formats
+     * @param sources Formats to scan for placeholders
+     * @return The placeholders found, as written
+     */
+    public static Set<String> findPlaceholders(Collection<String> sources) {
+        Set<String> found = new LinkedHashSet<>();
+        for (String source : sources) {
+            int start = nextPlaceholder(source, 0);
+            while (start >= 0) {
+                int end = source.indexOf('%', start + 1);
+                found.add(source.substring(start, end + 1));
+                start = nextPlaceholder(source, end + 1);
+            }
+        }
+        return Collections.unmodifiableSet(found);
+    }
+
+    /**
+     * Resolves the known placeholders of a player that are missing or about to expire
+     * @param player The player
+     */
+    public void warm(Player player) {
+        LoadedConfig loaded = plugin.getConfigManager().getLoaded();
+        ConfigSnapshot config = loaded.snapshot();
+        Set<String> placeholders = loaded.refreshedPlaceholders();
+        if (!config.isPlaceholderCacheEnabled() || placeholders.isEmpty() || !isPlaceholderApiEnabled()) {
+            return;
+        }
+
+        Map<String, CachedValue> playerValues = getValues(player);
+        // Refresh slightly early so chat does not see a value expire between two runs
+        long horizon = System.currentTimeMillis() + config.getPlaceholderRefreshInterval() * 50L;
+        for (String placeholder : placeholders) {
+            long ttl = config.getPlaceholderTtl(placeholder.substring(1, placeholder.length() - 1));
+            CachedValue cached = playerValues.get(placeholder);
+            if (ttl <= 0 || (cached != null && cached.expiresAt() > horizon)) {
+                continue;
+            }
+            try {
+                String value = PlaceholderAPI.setPlaceholders(player, placeholder);
+                playerValues.put(placeholder, new CachedValue(value, System.currentTimeMillis() + ttl));
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error refreshing placeholder " + placeholder + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Drops the cached values of a player
+     * @param uuid The player's UUID
+     */
+    public void invalidate(UUID uuid) {
+        values.remove(uuid);
+    }
+
+    /**
+     * Drops all cached values and restarts the refresher with the current configuration
+     */
+    public void reload() {
+        values.clear();
+        stopRefresher();
+        startRefresher();
+    }
+
+    public void shutdown() {
+        stopRefresher();
+        values.clear();
+    }
+
+    private synchronized void startRefresher() {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        if (!config.isPlaceholderCacheEnabled() || !config.isPlaceholderRefreshEnabled() || !isPlaceholderApiEnabled()) {
+            return;
+        }
+
+        long interval = config.getPlaceholderRefreshInterval();
+        // Chat already resolves placeholders off the main thread, so the refresher does the same
+        refreshTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            for (Player player : plugin.getServer().getOnlinePlayers()) {
+                warm(player);
+            }
+        }, interval, interval);
+    }
+
+    private synchronized void stopRefresher() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+    }
+
+    private boolean isPlaceholderApiEnabled() {
+        return plugin.getServer().getPluginManager().getPlugin("PlaceholderAPI") != null;
+    }
+
+    private record CachedValue(String value, long expiresAt) {
+    }
+}
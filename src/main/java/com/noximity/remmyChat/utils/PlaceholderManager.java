@@ -1,60 +1,54 @@
 package com.noximity.remmyChat.utils;
 
 import com.noximity.remmyChat.RemmyChat;
-import org.bukkit.configuration.ConfigurationSection;
+import com.noximity.remmyChat.config.ConfigSnapshot;
 import org.bukkit.entity.Player;
 import me.clip.placeholderapi.PlaceholderAPI;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class PlaceholderManager {
 
     private final RemmyChat plugin;
-    private final Map<String, String> customPlaceholders = new HashMap<>();
     private static final int MAX_RECURSION_DEPTH = 10;
-    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("%(\\w+(?:-\\w+)*)%");
-    private boolean debugEnabled;
-    private boolean debugPlaceholderResolution;
 
     public PlaceholderManager(RemmyChat plugin) {
         this.plugin = plugin;
-        updateDebugSettings();
-        loadCustomPlaceholders();
     }
 
     /**
-     * Updates debug settings from config
+     * Compiles the custom placeholders of a configuration, resolving nested placeholders so
+     * each key maps to its final text. Circular references and chains deeper than the
+     * recursion limit are reported here rather than on every message.
+     * @param config The configuration to read the placeholders from
+     * @return The compiled placeholders
      */
-    private void updateDebugSettings() {
-        this.debugEnabled = plugin.getConfig().getBoolean("debug.enabled", false);
-        this.debugPlaceholderResolution = debugEnabled && plugin.getConfig().getBoolean("debug.placeholder-resolution", false);
-    }
+    public PlaceholderReplacer compile(ConfigSnapshot config) {
+        boolean debug = config.isDebugPlaceholderResolution();
 
-    /**
-     * Loads custom placeholders from the configuration
-     */
-    public void loadCustomPlaceholders() {
-        customPlaceholders.clear();
-        updateDebugSettings();
-
-        ConfigurationSection placeholdersSection = plugin.getConfig().getConfigurationSection("placeholders");
-        if (placeholdersSection != null) {
-            for (String key : placeholdersSection.getKeys(false)) {
-                String value = placeholdersSection.getString(key);
-                if (value != null) {
-                    customPlaceholders.put(key, value);
-                    if (debugPlaceholderResolution) {
-                        plugin.getLogger().info("Loaded custom placeholder: %" + key + "%");
-                    }
-                }
+        Map<String, String> rawPlaceholders = config.getCustomPlaceholders();
+        if (debug) {
+            for (String key : rawPlaceholders.keySet()) {
+                plugin.getLogger().info("Loaded custom placeholder: %" + key + "%");
             }
         }
 
-        if (debugPlaceholderResolution) {
-            plugin.getLogger().info("Total placeholders loaded: " + customPlaceholders.size());
+        Map<String, String> resolvedValues = new HashMap<>();
+        Set<String> processingSet = new HashSet<>();
+        for (String key : rawPlaceholders.keySet()) {
+            resolvePlaceholderValue(key, rawPlaceholders, resolvedValues, processingSet, 0, debug);
+        }
+
+        Map<String, String> tokens = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : resolvedValues.entrySet()) {
+            tokens.put("%" + entry.getKey() + "%", entry.getValue());
         }
+        PlaceholderReplacer compiled = PlaceholderReplacer.of(tokens);
+
+        if (debug) {
+            plugin.getLogger().info("Total placeholders loaded: " + compiled.size());
+        }
+        return compiled;
     }
 
     /**
@@ -64,65 +58,19 @@ public class PlaceholderManager {
      */
     public String applyCustomPlaceholders(String text) {
         if (text == null) return "";
-        return resolveAllPlaceholders(text);
+        return plugin.getConfigManager().getLoaded().customPlaceholders().replace(text);
     }
 
-    /**
-     * Resolves all placeholders in a string, handling recursive dependencies properly
-     * @param text The text containing placeholders to resolve
-     * @return The text with all placeholders replaced
-     */
-    private String resolveAllPlaceholders(String text) {
-        // Get all placeholder keys mentioned in the text
-        Set<String> mentionedPlaceholders = new HashSet<>();
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
-        while (matcher.find()) {
-            String placeholderKey = matcher.group(1);
-            mentionedPlaceholders.add(placeholderKey);
-        }
-
-        if (mentionedPlaceholders.isEmpty()) {
-            return text; // No placeholders to resolve
-        }
-
-        // Create a dependency graph and detect circular references
-        Map<String, Set<String>> dependencies = new HashMap<>();
-        for (String key : mentionedPlaceholders) {
-            dependencies.put(key, new HashSet<>());
-
-            String value = customPlaceholders.get(key);
-            if (value != null) {
-                Matcher depMatcher = PLACEHOLDER_PATTERN.matcher(value);
-                while (depMatcher.find()) {
-                    String depKey = depMatcher.group(1);
-                    dependencies.get(key).add(depKey);
-                }
-            }
-        }
-
-        // Resolve placeholders in order (placeholders without dependencies first)
-        Map<String, String> resolvedValues = new HashMap<>();
-        Set<String> processingSet = new HashSet<>();
-
-        for (String key : mentionedPlaceholders) {
-            resolvePlaceholderValue(key, dependencies, resolvedValues, processingSet, 0);
-        }
-
-        // Apply all resolved placeholders to the text
-        String result = text;
-        for (Map.Entry<String, String> entry : resolvedValues.entrySet()) {
-            result = result.replace("%" + entry.getKey() + "%", entry.getValue());
-        }
-
-        return result;
+    private static boolean isKeyChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
     }
 
     /**
      * Recursively resolves a placeholder's value, handling dependencies
      */
-    private String resolvePlaceholderValue(String key, Map<String, Set<String>> dependencies,
+    private String resolvePlaceholderValue(String key, Map<String, String> rawPlaceholders,
                                           Map<String, String> resolvedValues,
-                                          Set<String> processingSet, int depth) {
+                                          Set<String> processingSet, int depth, boolean debug) {
         // Check for infinite recursion
         if (depth > MAX_RECURSION_DEPTH) {
             plugin.getLogger().warning("Maximum placeholder recursion depth exceeded for key: " + key);
@@ -141,32 +89,42 @@ public class PlaceholderManager {
         }
 
         // Get the raw value
-        String value = customPlaceholders.get(key);
+        String value = rawPlaceholders.get(key);
         if (value == null) {
             return "%" + key + "%"; // Placeholder not found, return as is
         }
 
-        // Debug log
-        if (debugPlaceholderResolution && depth == 0) {
-            plugin.getLogger().info("Resolving placeholder %" + key + "% = " + value);
-        }
-
         // Mark as being processed (to detect cycles)
         processingSet.add(key);
 
-        // Process dependencies first
-        Set<String> deps = dependencies.getOrDefault(key, Collections.emptySet());
-        for (String depKey : deps) {
-            if (customPlaceholders.containsKey(depKey)) {
-                String depValue = resolvePlaceholderValue(depKey, dependencies, resolvedValues, processingSet, depth + 1);
+        // Resolve dependencies first, then substitute them in one pass
+        Map<String, String> dependencies = new HashMap<>();
+        int index = value.indexOf('%');
+        while (index >= 0) {
+            int end = index + 1;
+            while (end < value.length() && isKeyChar(value.charAt(end))) {
+                end++;
+            }
+            if (end > index + 1 && end < value.length() && value.charAt(end) == '%') {
+                String depKey = value.substring(index + 1, end);
+                String token = value.substring(index, end + 1);
+                if (rawPlaceholders.containsKey(depKey) && !dependencies.containsKey(token)) {
+                    String depValue = resolvePlaceholderValue(depKey, rawPlaceholders, resolvedValues, processingSet, depth + 1, debug);
+
+                    if (debug && depth == 0) {
+                        plugin.getLogger().info(" - Dependency %" + depKey + "% = " + depValue);
+                    }
 
-                if (debugPlaceholderResolution && depth == 0) {
-                    plugin.getLogger().info(" - Dependency %" + depKey + "% = " + depValue);
+                    dependencies.put(token, depValue);
+                }
+                if (rawPlaceholders.containsKey(depKey)) {
+                    index = value.indexOf('%', end + 1);
+                    continue;
                 }
-
-                value = value.replace("%" + depKey + "%", depValue);
             }
+            index = value.indexOf('%', index + 1);
         }
+        value = PlaceholderReplacer.of(dependencies).replace(value);
 
         // Remove from processing set
         processingSet.remove(key);
@@ -174,7 +132,7 @@ public class PlaceholderManager {
         // Cache and return the resolved value
         resolvedValues.put(key, value);
 
-        if (debugPlaceholderResolution && depth == 0) {
+        if (debug && depth == 0) {
             plugin.getLogger().info("Final resolved value for %" + key + "% = " + value);
         }
 
@@ -0,0 +1,345 @@
+package com.noximity.remmyChat.utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces a fixed set of tokens (e.g. %player_name%) in one pass over the text.
+ * <p>
+ * The tokens are compiled once into an Aho-Corasick automaton, so the cost of a
+ * replacement depends on the length of the text and not on the number of tokens.
+ * The automaton still steps through every character of a token with a table lookup,
+ * which loses to the JDK's intrinsic {@link String#indexOf(String)} when there are only
+ * one or two tokens to look for, so those search each token with indexOf instead.
+ * Either way, matches are taken in the order they end and never overlap; for %-delimited
+ * tokens this is the same as replacing the leftmost token first. Replaced values are not
+ * scanned again. Instances are immutable and can be shared between threads.
+ */
+public final class PlaceholderReplacer {
+
+    private static final int MAX_BUFFER_CAPACITY = 8192;
+    // Up to this many tokens, one indexOf per token beats the automaton (PlaceholderReplacerBenchmark)
+    private static final int MAX_LINEAR_TOKENS = 2;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final String[] tokens;
+    private final String[] values;
+    private final int[] asciiClasses;
+    private final Map<Character, Integer> otherClasses;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[] matches;
+    private final int commonFirstChar;
+    private final boolean[] duplicates;
+    private final boolean linear;
+
+    private PlaceholderReplacer(String[] tokens, String[] values, int[] asciiClasses,
+                                Map<Character, Integer> otherClasses, int alphabetSize,
+                                int[] transitions, int[] matches, boolean linear) {
+        this.tokens = tokens;
+        this.values = values;
+        this.asciiClasses = asciiClasses;
+        this.otherClasses = otherClasses;
+        this.alphabetSize = alphabetSize;
+        this.transitions = transitions;
+        this.matches = matches;
+        this.commonFirstChar = commonFirstChar(tokens);
+        this.duplicates = duplicates(tokens);
+        this.linear = linear;
+    }
+
+    private static boolean[] duplicates(String[] tokens) {
+        // The first of two equal tokens wins, like in the automaton
+        boolean[] duplicates = new boolean[tokens.length];
+        for (int t = 0; t < tokens.length; t++) {
+            for (int earlier = 0; earlier < t; earlier++) {
+                if (tokens[t].equals(tokens[earlier])) {
+                    duplicates[t] = true;
+                    break;
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private static int commonFirstChar(String[] tokens) {
+        if (tokens.length == 0) {
+            return -1;
+        }
+        char first = tokens[0].charAt(0);
+        for (String token : tokens) {
+            if (token.charAt(0) != first) {
+                return -1;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Compiles a replacer whose values are given on every call
+     * @param tokens The tokens to find, e.g. %message%
+     * @return The compiled replacer
+     */
+    public static PlaceholderReplacer compile(String... tokens) {
+        return build(tokens.clone(), new String[tokens.length], MAX_LINEAR_TOKENS);
+    }
+
+    /**
+     * Compiles a replacer with a given cut-over between the two search strategies, for the benchmark
+     * @param maxLinearTokens Up to this many tokens are searched with indexOf
+     * @param tokens The tokens to find
+     * @return The compiled replacer
+     */
+    static PlaceholderReplacer compile(int maxLinearTokens, String... tokens) {
+        return build(tokens.clone(), new String[tokens.length], maxLinearTokens);
+    }
+
+    /**
+     * Compiles a replacer with fixed values
+     * @param replacements Token to value, e.g. %server% to the server name
+     * @return The compiled replacer
+     */
+    public static PlaceholderReplacer of(Map<String, String> replacements) {
+        Map<String, String> ordered = new LinkedHashMap<>(replacements);
+        return build(ordered.keySet().toArray(new String[0]), ordered.values().toArray(new String[0]),
+                MAX_LINEAR_TOKENS);
+    }
+
+    /**
+     * @return The number of tokens this replacer knows
+     */
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * Replaces every token with its fixed value
+     * @param text The text to process
+     * @return The text with tokens replaced, or the same instance when nothing matched
+     */
+    public String replace(String text) {
+        return replace(text, values);
+    }
+
+    /**
+     * Replaces every token with the value at the same index
+     * @param text The text to process
+     * @param replacements Values in token order; a null value keeps the token as-is
+     * @return The text with tokens replaced, or the same instance when nothing matched
+     */
+    public String replace(String text, String... replacements) {
+        if (text == null || tokens.length == 0) {
+            return text;
+        }
+        if (linear) {
+            return replaceLinear(text, replacements);
+        }
+
+        StringBuilder out = null;
+        int copied = 0;
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (state == 0 && commonFirstChar >= 0) {
+                // Nothing is partly matched, so skip straight to the next possible token start
+                i = text.indexOf(commonFirstChar, i);
+                if (i < 0) {
+                    break;
+                }
+            }
+            state = transitions[state * alphabetSize + classOf(text.charAt(i))];
+            int match = matches[state];
+            if (match < 0) {
+                continue;
+            }
+
+            String value = match < replacements.length ? replacements[match] : null;
+            if (value == null) {
+                continue;
+            }
+
+            if (out == null) {
+                out = BUFFER.get();
+                out.setLength(0);
+            }
+            out.append(text, copied, i + 1 - tokens[match].length()).append(value);
+            copied = i + 1;
+            state = 0;
+        }
+
+        if (out == null) {
+            return text;
+        }
+        out.append(text, copied, length);
+        String result = out.toString();
+        if (out.capacity() > MAX_BUFFER_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    private String replaceLinear(String text, String[] replacements) {
+        // Next occurrence of each token, -1 once it has none
+        int[] starts = new int[tokens.length];
+        for (int t = 0; t < tokens.length; t++) {
+            starts[t] = duplicates[t] ? -1 : text.indexOf(tokens[t]);
+        }
+
+        StringBuilder out = null;
+        int copied = 0;
+        while (true) {
+            // The match that ends first, the longer token when two end together
+            int match = -1;
+            int end = Integer.MAX_VALUE;
+            for (int t = 0; t < tokens.length; t++) {
+                if (starts[t] < 0) {
+                    continue;
+                }
+                int tokenEnd = starts[t] + tokens[t].length();
+                if (tokenEnd < end || (tokenEnd == end && tokens[t].length() > tokens[match].length())) {
+                    match = t;
+                    end = tokenEnd;
+                }
+            }
+            if (match < 0) {
+                break;
+            }
+
+            String value = match < replacements.length ? replacements[match] : null;
+            if (value == null) {
+                // The token stays, and hides shorter tokens ending at the same place
+                for (int t = 0; t < tokens.length; t++) {
+                    if (starts[t] >= 0 && starts[t] + tokens[t].length() == end) {
+                        starts[t] = text.indexOf(tokens[t], starts[t] + 1);
+                    }
+                }
+                continue;
+            }
+
+            if (out == null) {
+                out = BUFFER.get();
+                out.setLength(0);
+            }
+            out.append(text, copied, starts[match]).append(value);
+            copied = end;
+            for (int t = 0; t < tokens.length; t++) {
+                if (starts[t] >= 0 && starts[t] < end) {
+                    // Overlaps the replaced text, look again after it
+                    starts[t] = text.indexOf(tokens[t], end);
+                }
+            }
+        }
+
+        if (out == null) {
+            return text;
+        }
+        out.append(text, copied, text.length());
+        String result = out.toString();
+        if (out.capacity() > MAX_BUFFER_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        if (otherClasses.isEmpty()) {
+            return 0;
+        }
+        Integer index = otherClasses.get(c);
+        return index != null ? index : 0;
+    }
+
+    private static PlaceholderReplacer build(String[] tokens, String[] values, int maxLinearTokens) {
+        // Class 0 stands for every character that appears in no token
+        int[] asciiClasses = new int[128];
+        Map<Character, Integer> otherClasses = new HashMap<>();
+        int alphabetSize = 1;
+        for (String token : tokens) {
+            if (token == null || token.isEmpty()) {
+                throw new IllegalArgumentException("Tokens must not be empty");
+            }
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                if (c < 128) {
+                    if (asciiClasses[c] == 0) {
+                        asciiClasses[c] = alphabetSize++;
+                    }
+                } else if (!otherClasses.containsKey(c)) {
+                    otherClasses.put(c, alphabetSize++);
+                }
+            }
+        }
+
+        // Trie of all tokens, one row of transitions per state
+        int maxStates = 1;
+        for (String token : tokens) {
+            maxStates += token.length();
+        }
+        int[] transitions = new int[maxStates * alphabetSize];
+        Arrays.fill(transitions, -1);
+        int[] matches = new int[maxStates];
+        Arrays.fill(matches, -1);
+        int states = 1;
+
+        for (int t = 0; t < tokens.length; t++) {
+            String token = tokens[t];
+            int state = 0;
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                int cls = c < 128 ? asciiClasses[c] : otherClasses.get(c);
+                int next = transitions[state * alphabetSize + cls];
+                if (next < 0) {
+                    next = states++;
+                    transitions[state * alphabetSize + cls] = next;
+                }
+                state = next;
+            }
+            if (matches[state] < 0) {
+                // The first of two equal tokens wins
+                matches[state] = t;
+            }
+        }
+
+        // Breadth-first pass turns the trie into a full automaton through the failure links
+        int[] failure = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int cls = 0; cls < alphabetSize; cls++) {
+            int next = transitions[cls];
+            if (next < 0) {
+                transitions[cls] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (matches[state] < 0 && matches[failure[state]] >= 0) {
+                // A shorter token ends here as well
+                matches[state] = matches[failure[state]];
+            }
+            for (int cls = 0; cls < alphabetSize; cls++) {
+                int index = state * alphabetSize + cls;
+                int next = transitions[index];
+                int fallback = transitions[failure[state] * alphabetSize + cls];
+                if (next < 0) {
+                    transitions[index] = fallback;
+                } else {
+                    failure[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+
+        int[] compact = Arrays.copyOf(transitions, states * alphabetSize);
+        int[] compactMatches = Arrays.copyOf(matches, states);
+        return new PlaceholderReplacer(tokens, values, asciiClasses, otherClasses, alphabetSize, compact, compactMatches,
+                tokens.length <= maxLinearTokens);
+    }
+}
@@ -0,0 +1,78 @@
+package com.noximity.remmyChat.utils;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A per-player cache of values resolved from permissions, safe to fill from async chat threads.
+ * <p>
+ * Every player has a generation that invalidation bumps before removing their entry. A resolve
+ * reads the generation first and only stores its result if it is unchanged, so a value computed
+ * from permissions that changed while it was being resolved is returned once but never cached.
+ * @param <V> The cached value
+ */
+public final class PlayerCache<V> {
+
+    private final Map<UUID, V> values = new ConcurrentHashMap<>();
+    private final Map<UUID, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * @param uuid The player's UUID
+     * @return The cached value, or null if there is none
+     */
+    public V get(UUID uuid) {
+        return values.get(uuid);
+    }
+
+    /**
+     * Resolves a value and caches it unless the player was invalidated in the meantime
+     * @param uuid The player's UUID
+     * @param resolver Computes the value, called on the calling thread
+     * @return The resolved value
+     */
+    public V resolve(UUID uuid, Supplier<V> resolver) {
+        AtomicLong generation = generations.computeIfAbsent(uuid, key -> new AtomicLong());
+        long seen = generation.get();
+        V value = resolver.get();
+        // Invalidation bumps the generation before removing the entry, so checking it inside
+        // compute either sees the bump or has its entry removed right after
+        values.compute(uuid, (key, old) ->
+                generation.get() == seen && generations.get(uuid) == generation ? value : old);
+        return value;
+    }
+
+    /**
+     * Forgets a player's value, including one that is being resolved right now
+     * @param uuid The player's UUID
+     */
+    public void invalidate(UUID uuid) {
+        AtomicLong generation = generations.get(uuid);
+        if (generation != null) {
+            generation.incrementAndGet();
+        }
+        values.remove(uuid);
+    }
+
+    /**
+     * Drops everything kept for a player, e.g. when they quit
+     * @param uuid The player's UUID
+     */
+    public void remove(UUID uuid) {
+        // A resolve still holding the removed generation no longer matches the map and is not cached
+        generations.remove(uuid);
+        values.remove(uuid);
+    }
+
+    /**
+     * Forgets every value, including ones that are being resolved right now
+     */
+    public void clear() {
+        for (AtomicLong generation : generations.values()) {
+            generation.incrementAndGet();
+        }
+        values.clear();
+    }
+}
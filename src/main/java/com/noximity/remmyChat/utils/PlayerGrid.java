@@ -0,0 +1,143 @@
+package com.noximity.remmyChat.utils;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Buckets online players by world and by 32x32 block column, so radius channels only
+ * look at players in the cells their radius covers. Cells are updated from the main
+ * thread when a player crosses a cell border; lookups may run on chat threads.
+ */
+public class PlayerGrid {
+
+    private static final int CELL_SHIFT = 5;
+
+    private final Map<UUID, Map<Long, Set<Player>>> worlds = new ConcurrentHashMap<>();
+    private final Map<UUID, Cell> playerCells = new ConcurrentHashMap<>();
+
+    /**
+     * Moves a player into the cell of a location, if it is not there already
+     * @param player The player
+     * @param location The player's new location
+     */
+    public void update(Player player, Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return;
+        }
+
+        UUID worldId = world.getUID();
+        long key = cellKey(location.getBlockX() >> CELL_SHIFT, location.getBlockZ() >> CELL_SHIFT);
+        Cell current = playerCells.get(player.getUniqueId());
+        if (current != null && current.key() == key && current.world().equals(worldId)) {
+            return;
+        }
+
+        if (current != null) {
+            removeFromCell(current, player);
+        }
+        worlds.computeIfAbsent(worldId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet())
+                .add(player);
+        playerCells.put(player.getUniqueId(), new Cell(worldId, key));
+    }
+
+    /**
+     * Removes a player from the grid
+     * @param player The player
+     */
+    public void remove(Player player) {
+        Cell current = playerCells.remove(player.getUniqueId());
+        if (current != null) {
+            removeFromCell(current, player);
+        }
+    }
+
+    /**
+     * @param block A block coordinate
+     * @return The cell coordinate the block falls in
+     */
+    public static int toCell(int block) {
+        return block >> CELL_SHIFT;
+    }
+
+    /**
+     * Gets the players within a radius of a player, including the player itself
+     * @param source The player at the centre
+     * @param radius The radius in blocks
+     * @return The players in range
+     */
+    public List<Player> getNearbyPlayers(Player source, double radius) {
+        List<Player> nearby = new ArrayList<>();
+        Location origin = source.getLocation();
+        World world = origin.getWorld();
+        Map<Long, Set<Player>> cells = world != null ? worlds.get(world.getUID()) : null;
+        if (cells == null) {
+            return nearby;
+        }
+
+        double radiusSquared = radius * radius;
+        Location scratch = new Location(null, 0, 0, 0);
+        int minX = (int) Math.floor(origin.getX() - radius) >> CELL_SHIFT;
+        int maxX = (int) Math.floor(origin.getX() + radius) >> CELL_SHIFT;
+        int minZ = (int) Math.floor(origin.getZ() - radius) >> CELL_SHIFT;
+        int maxZ = (int) Math.floor(origin.getZ() + radius) >> CELL_SHIFT;
+
+        long coveredCells = (long) (maxX - minX + 1) * (maxZ - minZ + 1);
+        if (coveredCells > cells.size()) {
+            // A radius wider than the occupied area, visiting the occupied cells is cheaper
+            for (Set<Player> cell : cells.values()) {
+                collectInRange(cell, world, origin, radiusSquared, scratch, nearby);
+            }
+            return nearby;
+        }
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                Set<Player> cell = cells.get(cellKey(x, z));
+                if (cell != null) {
+                    collectInRange(cell, world, origin, radiusSquared, scratch, nearby);
+                }
+            }
+        }
+        return nearby;
+    }
+
+    private static void collectInRange(Collection<Player> candidates, World world, Location origin,
+                                       double radiusSquared, Location scratch, List<Player> nearby) {
+        for (Player candidate : candidates) {
+            candidate.getLocation(scratch);
+            // The cell may lag behind a world change by a tick, so the world is checked again
+            if (world.equals(scratch.getWorld()) && origin.distanceSquared(scratch) <= radiusSquared) {
+                nearby.add(candidate);
+            }
+        }
+    }
+
+    private void removeFromCell(Cell cell, Player player) {
+        Map<Long, Set<Player>> cells = worlds.get(cell.world());
+        if (cells == null) {
+            return;
+        }
+        cells.computeIfPresent(cell.key(), (key, players) -> {
+            players.remove(player);
+            return players.isEmpty() ? null : players;
+        });
+    }
+
+    private static long cellKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private record Cell(UUID world, long key) {
+    }
+}
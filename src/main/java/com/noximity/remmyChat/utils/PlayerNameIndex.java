@@ -0,0 +1,155 @@
+package com.noximity.remmyChat.utils;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A case-insensitive trie of online player names. It serves both exact lookups by name
+ * and prefix completion, and walks the typed text char by char, so neither allocates
+ * lowercase copies of the input or of the player names. Children are kept sorted, which
+ * makes completions come out in alphabetical order.
+ */
+public class PlayerNameIndex {
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Adds an online player
+     * @param player The player
+     */
+    public synchronized void add(Player player) {
+        String name = player.getName();
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.childOrCreate(fold(name.charAt(i)));
+        }
+        if (node.player == null) {
+            size++;
+        }
+        node.player = player;
+    }
+
+    /**
+     * Removes a player, unless another player with the same name took their place
+     * @param player The player
+     */
+    public synchronized void remove(Player player) {
+        removeFrom(root, player.getName(), 0, player);
+    }
+
+    private boolean removeFrom(Node node, String name, int depth, Player player) {
+        if (depth == name.length()) {
+            if (node.player != null && node.player.getUniqueId().equals(player.getUniqueId())) {
+                node.player = null;
+                size--;
+            }
+        } else {
+            char c = fold(name.charAt(depth));
+            Node child = node.child(c);
+            if (child != null && removeFrom(child, name, depth + 1, player)) {
+                node.removeChild(c);
+            }
+        }
+        // Tell the parent whether this node can be pruned
+        return node.player == null && node.childCount == 0;
+    }
+
+    /**
+     * Finds an online player by name, ignoring case
+     * @param name The name
+     * @return The player, or null if nobody by that name is online
+     */
+    public synchronized Player getExact(String name) {
+        Node node = find(name);
+        return node != null ? node.player : null;
+    }
+
+    /**
+     * Lists the names of online players that start with a prefix, ignoring case
+     * @param prefix The typed text, may be empty
+     * @return The matching names in alphabetical order
+     */
+    public synchronized List<String> complete(String prefix) {
+        Node node = find(prefix);
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        List<String> names = new ArrayList<>(node == root ? size : 8);
+        collect(node, names);
+        return names;
+    }
+
+    private Node find(String text) {
+        Node node = root;
+        for (int i = 0; i < text.length() && node != null; i++) {
+            node = node.child(fold(text.charAt(i)));
+        }
+        return node;
+    }
+
+    private static void collect(Node node, List<String> names) {
+        if (node.player != null) {
+            names.add(node.player.getName());
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            collect(node.children[i], names);
+        }
+    }
+
+    private static char fold(char c) {
+        // Minecraft names are ASCII, skip the locale-aware path for them
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c < 128 ? c : Character.toLowerCase(c);
+    }
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int childCount;
+        private Player player;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insert = -index - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insert, keys, insert + 1, childCount - insert);
+            System.arraycopy(children, insert, children, insert + 1, childCount - insert);
+            Node created = new Node();
+            keys[insert] = c;
+            children[insert] = created;
+            childCount++;
+            return created;
+        }
+
+        private void removeChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+    }
+}